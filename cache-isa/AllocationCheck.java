@@ -0,0 +1,75 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Проверка, что симуляция в установившемся режиме ничего не выделяет на куче.
+// Запуск: java -classpath . AllocationCheck
+// Выделения на запуск (память, кэши, раскодирование) одинаковы для короткого и длинного прогона,
+// поэтому их разность, делённая на разность числа команд, и есть байты на одну команду.
+public class AllocationCheck {
+    private static final int SHORT_RUN = 100;
+    private static final int LONG_RUN = 1000;
+    private static final double MAX_BYTES_PER_INSTRUCTION = 0.01;
+
+    public static void main(String[] args) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        Map<String, Integer> registerMap = Main.registerMap;
+
+        boolean failed = false;
+        for (boolean threaded : new boolean[]{false, true}) {
+            for (int i = 0; i < 5; i++) {
+                run(registerMap, LONG_RUN, threaded);
+            }
+
+            long bytes = threads.getThreadAllocatedBytes(threadId);
+            long shortInstructions = run(registerMap, SHORT_RUN, threaded);
+            long shortBytes = threads.getThreadAllocatedBytes(threadId) - bytes;
+
+            bytes = threads.getThreadAllocatedBytes(threadId);
+            long longInstructions = run(registerMap, LONG_RUN, threaded);
+            long longBytes = threads.getThreadAllocatedBytes(threadId) - bytes;
+
+            double perInstruction = (double) (longBytes - shortBytes) / (longInstructions - shortInstructions);
+            System.out.printf("%-11s %d instructions, %.4f bytes/instruction%n",
+                    threaded ? "threaded" : "interpreter", longInstructions, perInstruction);
+            failed |= perInstruction > MAX_BYTES_PER_INSTRUCTION;
+        }
+
+        if (failed) {
+            System.err.println("Steady-state simulation allocates on the heap");
+            System.exit(1);
+        }
+    }
+
+    private static long run(Map<String, Integer> registerMap, int iterations, boolean threaded) {
+        Assembler assembler = new Assembler(registerMap);
+        assembler.parse(program(iterations));
+        CacheConfig config = CacheConfig.defaults();
+        CPU processor = new CPU(Memory.allocate(config.addrLen), registerMap, config);
+        processor.setThreaded(threaded);
+        processor.executeProgram(assembler.getCommands());
+        return processor.lruCache.stats.accesses(CacheStats.INSTRUCTION);
+    }
+
+    // iterations проходов по массиву из 256 слов: запись, чтение, сложение
+    private static List<String> program(int iterations) {
+        List<String> lines = new ArrayList<>();
+        lines.add("addi s1, zero, " + iterations);
+        lines.add("addi s0, zero, 1024");
+        lines.add("addi t0, zero, 0");
+        lines.add("addi t1, zero, 256");
+        lines.add("slli t3, t0, 2");
+        lines.add("add t3, t3, s0");
+        lines.add("sw t0, 0, t3");
+        lines.add("lw t4, 0, t3");
+        lines.add("add t2, t2, t4");
+        lines.add("addi t0, t0, 1");
+        lines.add("blt t0, t1, -24");
+        lines.add("addi s1, s1, -1");
+        lines.add("blt zero, s1, -40");
+        return lines;
+    }
+}
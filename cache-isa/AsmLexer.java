@@ -0,0 +1,274 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+// Разбор ассемблерного текста прямо из байтового буфера (для файла - отображённого в память).
+// Одна строка - одна команда, перед которой может стоять метка "name:"; операнды разделяются
+// пробелами, запятыми и скобками, комментарии начинаются с '#' или ';'.
+// Токены - это только (начало, длина) в буфере, строки создаются лишь для меток и сообщений об ошибках.
+public final class AsmLexer {
+    private final ByteBuffer in;
+    private final int end;
+    private int pos;
+    private int line;
+
+    int labelStart;
+    int labelLength;
+    int mnemonicStart;
+    int mnemonicLength;
+    int operandCount;
+    int[] operandStart = new int[8];
+    int[] operandLength = new int[8];
+
+    public AsmLexer(ByteBuffer in) {
+        this.in = in;
+        this.pos = in.position();
+        this.end = in.limit();
+    }
+
+    public static AsmLexer open(String fileName) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            return new AsmLexer(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public static AsmLexer of(List<String> lines) {
+        return new AsmLexer(ByteBuffer.wrap(String.join("\n", lines).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    // переходит к следующей строке с меткой или командой; false, если текст закончился
+    public boolean nextStatement() {
+        while (pos < end) {
+            line++;
+            labelLength = 0;
+            mnemonicLength = 0;
+            operandCount = 0;
+            boolean comment = false;
+            while (pos < end) {
+                byte c = in.get(pos);
+                if (c == '\n') {
+                    pos++;
+                    break;
+                }
+                if (comment || isSeparator(c)) {
+                    pos++;
+                    continue;
+                }
+                if (c == '#' || c == ';') {
+                    comment = true;
+                    pos++;
+                    continue;
+                }
+                int start = pos;
+                while (pos < end && !isSeparator(in.get(pos)) && in.get(pos) != '\n'
+                        && in.get(pos) != '#' && in.get(pos) != ';') {
+                    pos++;
+                }
+                addToken(start, pos - start);
+            }
+            if (mnemonicLength > 0 || labelLength > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void addToken(int start, int length) {
+        if (mnemonicLength == 0 && labelLength == 0 && length > 1 && in.get(start + length - 1) == ':') {
+            labelStart = start;
+            labelLength = length - 1;
+        } else if (mnemonicLength == 0) {
+            mnemonicStart = start;
+            mnemonicLength = length;
+        } else {
+            if (operandCount == operandStart.length) {
+                operandStart = Arrays.copyOf(operandStart, 2 * operandCount);
+                operandLength = Arrays.copyOf(operandLength, 2 * operandCount);
+            }
+            operandStart[operandCount] = start;
+            operandLength[operandCount] = length;
+            operandCount++;
+        }
+    }
+
+    private static boolean isSeparator(byte c) {
+        return c == ' ' || c == '\t' || c == '\r' || c == ',' || c == '(' || c == ')';
+    }
+
+    int line() {
+        return line;
+    }
+
+    int mnemonic(Names names) {
+        return names.find(in, mnemonicStart, mnemonicLength);
+    }
+
+    String mnemonicText() {
+        return text(mnemonicStart, mnemonicLength);
+    }
+
+    String labelText() {
+        return text(labelStart, labelLength);
+    }
+
+    String operandText(int i) {
+        return text(operandStart[i], operandLength[i]);
+    }
+
+    private String text(int start, int length) {
+        byte[] bytes = new byte[length];
+        in.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void checkOperand(int i) {
+        if (i >= operandCount) {
+            throw new IllegalArgumentException("Line " + line + ": missing operand for " + mnemonicText());
+        }
+    }
+
+    int register(int i, Names registers) {
+        checkOperand(i);
+        int register = registers.find(in, operandStart[i], operandLength[i]);
+        if (register < 0) {
+            throw new IllegalArgumentException("Unknown register: " + operandText(i).toLowerCase());
+        }
+        return register;
+    }
+
+    boolean isRegister(int i, Names registers) {
+        checkOperand(i);
+        return registers.find(in, operandStart[i], operandLength[i]) >= 0;
+    }
+
+    // операнд - имя метки, а не число
+    boolean isSymbol(int i) {
+        checkOperand(i);
+        byte c = in.get(operandStart[i]);
+        return Character.isLetter(c) || c == '_' || c == '.';
+    }
+
+    // десятичное или шестнадцатеричное (0x, -0x) число
+    int immediate(int i) {
+        checkOperand(i);
+        int p = operandStart[i];
+        int e = p + operandLength[i];
+        boolean negative = false;
+        if (in.get(p) == '-' || in.get(p) == '+') {
+            negative = in.get(p) == '-';
+            p++;
+        }
+        int radix = 10;
+        if (e - p > 2 && in.get(p) == '0' && (in.get(p + 1) == 'x' || in.get(p + 1) == 'X')) {
+            radix = 16;
+            p += 2;
+        }
+        if (p == e) {
+            throw new NumberFormatException("Line " + line + ": incorrect number " + operandText(i));
+        }
+        long value = 0;
+        for (; p < e; p++) {
+            int digit = Character.digit(in.get(p), radix);
+            if (digit < 0) {
+                throw new NumberFormatException("Line " + line + ": incorrect number " + operandText(i));
+            }
+            value = value * radix + digit;
+            if (value > 0xFFFFFFFFL) {
+                throw new NumberFormatException("Line " + line + ": number out of range " + operandText(i));
+            }
+        }
+        return (int) (negative ? -value : value);
+    }
+
+    // биты fence: число или набор букв i, o, r, w
+    int fenceSet(int i) {
+        checkOperand(i);
+        if (Character.isDigit(in.get(operandStart[i]))) {
+            return immediate(i);
+        }
+        int set = 0;
+        for (int p = operandStart[i]; p < operandStart[i] + operandLength[i]; p++) {
+            switch (in.get(p)) {
+                case 'r':
+                    set += 1;
+                    break;
+                case 'w':
+                    set += 2;
+                    break;
+                case 'i':
+                    set += 4;
+                    break;
+                case 'o':
+                    set += 8;
+                    break;
+                default:
+                    break;
+            }
+        }
+        return set;
+    }
+
+    // Таблица имён (мнемоник, регистров) с поиском по байтам без создания строк, регистр не важен
+    static final class Names {
+        private final byte[][] keys;
+        private final int[] values;
+        private final int mask;
+
+        Names(Map<String, Integer> names) {
+            int capacity = Integer.highestOneBit(Math.max(names.size(), 1) * 4);
+            keys = new byte[capacity][];
+            values = new int[capacity];
+            mask = capacity - 1;
+            for (Map.Entry<String, Integer> entry : names.entrySet()) {
+                byte[] key = entry.getKey().toLowerCase().getBytes(StandardCharsets.UTF_8);
+                int slot = hash(ByteBuffer.wrap(key), 0, key.length) & mask;
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                values[slot] = entry.getValue();
+            }
+        }
+
+        int find(ByteBuffer in, int start, int length) {
+            int slot = hash(in, start, length) & mask;
+            while (keys[slot] != null) {
+                if (matches(keys[slot], in, start, length)) {
+                    return values[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        private static int hash(ByteBuffer in, int start, int length) {
+            int h = length;
+            for (int i = start; i < start + length; i++) {
+                h = 31 * h + lower(in.get(i));
+            }
+            return h ^ (h >>> 16);
+        }
+
+        private static boolean matches(byte[] key, ByteBuffer in, int start, int length) {
+            if (key.length != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (key[i] != lower(in.get(start + i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static int lower(byte c) {
+            return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+        }
+    }
+}
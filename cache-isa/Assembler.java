@@ -1,297 +1,680 @@
-import java.io.*;
-import java.util.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public class Assembler {
-    private final Map<String, Integer> registerMap;
-    private final Map<String, Integer> instructions = new HashMap<>();
-    private final List<Integer> commands = new ArrayList<>();
+    static final int FORMAT_R = 0;
+    static final int FORMAT_I = 1;
+    static final int FORMAT_SHIFT = 2; // I-type с 5-битным shamt и funct7
+    static final int FORMAT_LOAD = 3;
+    static final int FORMAT_S = 4;
+    static final int FORMAT_B = 5;
+    static final int FORMAT_J = 6;
+    static final int FORMAT_U = 7;
+    static final int FORMAT_FENCE = 8;
+    static final int FORMAT_FIXED = 9; // команда без операндов, opcode - готовое машинное слово
+    static final int FORMAT_PSEUDO = 10; // псевдокоманда, opcode - номер PSEUDO_*, funct3 - условие ветвления
+    static final int FORMAT_DIRECTIVE = 11; // директива, opcode - номер DIRECTIVE_*
+    static final int FIXUP_ADDRESS = 12; // абсолютный адрес метки в тройке addi/slli/addi (la), меньше LA_LIMIT
+    // addi/slli/addi дают 12 + 12 бит со знаком: наибольший адрес - 0x7FF7FF, около 8 МиБ от нуля
+    static final int LA_LIMIT = 0x7FF800;
+    static final int FIXUP_WORD = 13; // абсолютный адрес метки в слове данных (.word label)
+
+    static final int PSEUDO_NOP = 0;
+    static final int PSEUDO_MV = 1;
+    static final int PSEUDO_NOT = 2;
+    static final int PSEUDO_NEG = 3;
+    static final int PSEUDO_LI = 4;
+    static final int PSEUDO_LA = 5;
+    static final int PSEUDO_J = 6;
+    static final int PSEUDO_CALL = 7;
+    static final int PSEUDO_JR = 8;
+    static final int PSEUDO_RET = 9;
+    static final int PSEUDO_BRANCH_ZERO = 10; // beqz rs, off -> b<cond> rs, zero, off
+    static final int PSEUDO_BRANCH_ZERO_SWAPPED = 11; // bgtz rs, off -> b<cond> zero, rs, off
+    static final int PSEUDO_BRANCH_SWAPPED = 12; // bgt rs, rt, off -> b<cond> rt, rs, off
+
+    static final int DIRECTIVE_TEXT = 0;
+    static final int DIRECTIVE_DATA = 1;
+    static final int DIRECTIVE_WORD = 2;
+    static final int DIRECTIVE_HALF = 3;
+    static final int DIRECTIVE_BYTE = 4;
+    static final int DIRECTIVE_SPACE = 5;
+    static final int DIRECTIVE_ALIGN = 6;
+    static final int DIRECTIVE_IGNORED = 7;
+
+    static final class Encoding {
+        final String mnemonic;
+        final int format;
+        final int opcode;
+        final int funct3;
+        final int funct7;
+
+        Encoding(String mnemonic, int format, int opcode, int funct3, int funct7) {
+            this.mnemonic = mnemonic;
+            this.format = format;
+            this.opcode = opcode;
+            this.funct3 = funct3;
+            this.funct7 = funct7;
+        }
+    }
+
+    static final Encoding[] ENCODINGS = {
+            // RV32I R-type
+            new Encoding("add", FORMAT_R, 0x33, 0, 0x00),
+            new Encoding("sub", FORMAT_R, 0x33, 0, 0x20),
+            new Encoding("sll", FORMAT_R, 0x33, 1, 0x00),
+            new Encoding("slt", FORMAT_R, 0x33, 2, 0x00),
+            new Encoding("sltu", FORMAT_R, 0x33, 3, 0x00),
+            new Encoding("xor", FORMAT_R, 0x33, 4, 0x00),
+            new Encoding("srl", FORMAT_R, 0x33, 5, 0x00),
+            new Encoding("sra", FORMAT_R, 0x33, 5, 0x20),
+            new Encoding("or", FORMAT_R, 0x33, 6, 0x00),
+            new Encoding("and", FORMAT_R, 0x33, 7, 0x00),
+
+            // RV32M
+            new Encoding("mul", FORMAT_R, 0x33, 0, 0x01),
+            new Encoding("mulh", FORMAT_R, 0x33, 1, 0x01),
+            new Encoding("mulhsu", FORMAT_R, 0x33, 2, 0x01),
+            new Encoding("mulhu", FORMAT_R, 0x33, 3, 0x01),
+            new Encoding("div", FORMAT_R, 0x33, 4, 0x01),
+            new Encoding("divu", FORMAT_R, 0x33, 5, 0x01),
+            new Encoding("rem", FORMAT_R, 0x33, 6, 0x01),
+            new Encoding("remu", FORMAT_R, 0x33, 7, 0x01),
+
+            // I-type
+            new Encoding("addi", FORMAT_I, 0x13, 0, 0),
+            new Encoding("slti", FORMAT_I, 0x13, 2, 0),
+            new Encoding("sltiu", FORMAT_I, 0x13, 3, 0),
+            new Encoding("xori", FORMAT_I, 0x13, 4, 0),
+            new Encoding("ori", FORMAT_I, 0x13, 6, 0),
+            new Encoding("andi", FORMAT_I, 0x13, 7, 0),
+            new Encoding("slli", FORMAT_SHIFT, 0x13, 1, 0x00),
+            new Encoding("srli", FORMAT_SHIFT, 0x13, 5, 0x00),
+            new Encoding("srai", FORMAT_SHIFT, 0x13, 5, 0x20),
+            new Encoding("jalr", FORMAT_I, 0x67, 0, 0),
+
+            // Load
+            new Encoding("lb", FORMAT_LOAD, 0x03, 0, 0),
+            new Encoding("lh", FORMAT_LOAD, 0x03, 1, 0),
+            new Encoding("lw", FORMAT_LOAD, 0x03, 2, 0),
+            new Encoding("lbu", FORMAT_LOAD, 0x03, 4, 0),
+            new Encoding("lhu", FORMAT_LOAD, 0x03, 5, 0),
+
+            // S-type
+            new Encoding("sb", FORMAT_S, 0x23, 0, 0),
+            new Encoding("sh", FORMAT_S, 0x23, 1, 0),
+            new Encoding("sw", FORMAT_S, 0x23, 2, 0),
+
+            // B-type
+            new Encoding("beq", FORMAT_B, 0x63, 0, 0),
+            new Encoding("bne", FORMAT_B, 0x63, 1, 0),
+            new Encoding("blt", FORMAT_B, 0x63, 4, 0),
+            new Encoding("bge", FORMAT_B, 0x63, 5, 0),
+            new Encoding("bltu", FORMAT_B, 0x63, 6, 0),
+            new Encoding("bgeu", FORMAT_B, 0x63, 7, 0),
+
+            // J-type, U-type
+            new Encoding("jal", FORMAT_J, 0x6F, 0, 0),
+            new Encoding("lui", FORMAT_U, 0x37, 0, 0),
+            new Encoding("auipc", FORMAT_U, 0x17, 0, 0),
+
+            // Environment
+            new Encoding("fence", FORMAT_FENCE, 0x0F, 0, 0),
+            new Encoding("fence.tso", FORMAT_FIXED, 0x8330000F, 0, 0),
+            new Encoding("pause", FORMAT_FIXED, 0x0100000F, 0, 0),
+            new Encoding("ecall", FORMAT_FIXED, 0x00000073, 0, 0),
+            new Encoding("ebreak", FORMAT_FIXED, 0x00100073, 0, 0),
+
+            // Псевдокоманды
+            new Encoding("nop", FORMAT_PSEUDO, PSEUDO_NOP, 0, 0),
+            new Encoding("mv", FORMAT_PSEUDO, PSEUDO_MV, 0, 0),
+            new Encoding("not", FORMAT_PSEUDO, PSEUDO_NOT, 0, 0),
+            new Encoding("neg", FORMAT_PSEUDO, PSEUDO_NEG, 0, 0),
+            new Encoding("li", FORMAT_PSEUDO, PSEUDO_LI, 0, 0),
+            new Encoding("la", FORMAT_PSEUDO, PSEUDO_LA, 0, 0),
+            new Encoding("j", FORMAT_PSEUDO, PSEUDO_J, 0, 0),
+            new Encoding("call", FORMAT_PSEUDO, PSEUDO_CALL, 0, 0),
+            new Encoding("jr", FORMAT_PSEUDO, PSEUDO_JR, 0, 0),
+            new Encoding("ret", FORMAT_PSEUDO, PSEUDO_RET, 0, 0),
+            new Encoding("beqz", FORMAT_PSEUDO, PSEUDO_BRANCH_ZERO, 0, 0),
+            new Encoding("bnez", FORMAT_PSEUDO, PSEUDO_BRANCH_ZERO, 1, 0),
+            new Encoding("bltz", FORMAT_PSEUDO, PSEUDO_BRANCH_ZERO, 4, 0),
+            new Encoding("bgez", FORMAT_PSEUDO, PSEUDO_BRANCH_ZERO, 5, 0),
+            new Encoding("bgtz", FORMAT_PSEUDO, PSEUDO_BRANCH_ZERO_SWAPPED, 4, 0),
+            new Encoding("blez", FORMAT_PSEUDO, PSEUDO_BRANCH_ZERO_SWAPPED, 5, 0),
+            new Encoding("bgt", FORMAT_PSEUDO, PSEUDO_BRANCH_SWAPPED, 4, 0),
+            new Encoding("ble", FORMAT_PSEUDO, PSEUDO_BRANCH_SWAPPED, 5, 0),
+            new Encoding("bgtu", FORMAT_PSEUDO, PSEUDO_BRANCH_SWAPPED, 6, 0),
+            new Encoding("bleu", FORMAT_PSEUDO, PSEUDO_BRANCH_SWAPPED, 7, 0),
+
+            // Директивы
+            new Encoding(".text", FORMAT_DIRECTIVE, DIRECTIVE_TEXT, 0, 0),
+            new Encoding(".data", FORMAT_DIRECTIVE, DIRECTIVE_DATA, 0, 0),
+            new Encoding(".word", FORMAT_DIRECTIVE, DIRECTIVE_WORD, 0, 0),
+            new Encoding(".half", FORMAT_DIRECTIVE, DIRECTIVE_HALF, 0, 0),
+            new Encoding(".byte", FORMAT_DIRECTIVE, DIRECTIVE_BYTE, 0, 0),
+            new Encoding(".space", FORMAT_DIRECTIVE, DIRECTIVE_SPACE, 0, 0),
+            new Encoding(".zero", FORMAT_DIRECTIVE, DIRECTIVE_SPACE, 0, 0),
+            new Encoding(".align", FORMAT_DIRECTIVE, DIRECTIVE_ALIGN, 0, 0),
+            new Encoding(".globl", FORMAT_DIRECTIVE, DIRECTIVE_IGNORED, 0, 0),
+            new Encoding(".global", FORMAT_DIRECTIVE, DIRECTIVE_IGNORED, 0, 0),
+    };
+
+    // ссылка на метку, дописывается после разбора: index - номер команды, для FIXUP_WORD - смещение в данных
+    static final class Fixup {
+        final int index;
+        final int format;
+        final String symbol;
+        final int line;
+
+        Fixup(int index, int format, String symbol, int line) {
+            this.index = index;
+            this.format = format;
+            this.symbol = symbol;
+            this.line = line;
+        }
+    }
+
+    private static final AsmLexer.Names mnemonics;
+
+    static {
+        Map<String, Integer> indices = new HashMap<>();
+        for (int i = 0; i < ENCODINGS.length; i++) {
+            indices.put(ENCODINGS[i].mnemonic, i);
+        }
+        mnemonics = new AsmLexer.Names(indices);
+    }
+
+    private final AsmLexer.Names registers;
+    private int[] commands = new int[1024];
+    private int size;
+    private byte[] data = new byte[1024];
+    private int dataSize;
+    private boolean inData;
+    private final Map<String, Integer> symbols = new HashMap<>(); // метка -> смещение в байтах от начала команд
+    private final Map<String, Integer> dataSymbols = new HashMap<>(); // метка -> смещение в секции данных
+    private List<Fixup> fixups = new ArrayList<>();
+    private boolean linked;
 
     public Assembler(Map<String, Integer> registerMap) {
-        this.registerMap = registerMap;
+        this.registers = new AsmLexer.Names(registerMap);
     }
 
     public void writeBinaryFile(String outputFileName) throws IOException {
-        try (FileOutputStream fos = new FileOutputStream(outputFileName);
-             BufferedOutputStream bos = new BufferedOutputStream(fos)) {
-            for (Integer cmd : commands) {
-                byte[] bytes = toLittleEndian(cmd);
-                bos.write(bytes);
+        int[] image = getCommands();
+        writeBinaryFile(outputFileName, image, image.length);
+    }
+
+    // все команды одним блоком в little-endian
+    static void writeBinaryFile(String outputFileName, int[] commands, int size) throws IOException {
+        ByteBuffer out = ByteBuffer.allocate(4 * size).order(ByteOrder.LITTLE_ENDIAN);
+        out.asIntBuffer().put(commands, 0, size);
+        try (FileChannel channel = FileChannel.open(Paths.get(outputFileName), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (out.hasRemaining()) {
+                channel.write(out);
             }
         }
     }
 
     public void parse(List<String> asmCode) {
-        for (String line : asmCode) {
-            String trimmedLine = line.trim();
-            if (trimmedLine.isEmpty()) continue;
-
-            String[] parts = trimmedLine.split("\s+", 2);
-            String command = parts[0];
-            String args = parts.length > 1 ? parts[1] : "";
+        parse(AsmLexer.of(asmCode));
+    }
 
-            String[] arguments = args.split("\s*,\s*");
+    // Первый проход кодирует команды и данные, ссылки на метки оставляя нулями; второй (link) дописывает их.
+    // Образ модуля - команды, за ними с границы слова секция данных.
+    // Ветвления и jal на команды этого же текста разрешаются сразу: их смещение не зависит от того,
+    // где модуль окажется в образе. Абсолютные адреса (la, .word label) и ссылки на данные и на чужие
+    // метки ждут link(), когда известны адреса команд и данных модуля.
+    public void parse(AsmLexer lexer) {
+        if (dataSize > 0) {
+            throw new IllegalStateException("Program with a .data section must be parsed at once");
+        }
+        inData = false;
+        linked = false;
+        while (lexer.nextStatement()) {
+            if (lexer.labelLength > 0) {
+                defineLabel(lexer);
+            }
+            if (lexer.mnemonicLength == 0) {
+                continue;
+            }
+            int mnemonic = lexer.mnemonic(mnemonics);
+            if (mnemonic < 0) {
+                throw new IllegalArgumentException("Unknown instruction: " + lexer.mnemonicText());
+            }
+            Encoding encoding = ENCODINGS[mnemonic];
+            if (encoding.format == FORMAT_DIRECTIVE) {
+                directive(encoding, lexer);
+            } else if (inData) {
+                throw new IllegalArgumentException("Line " + lexer.line() + ": instruction in .data section");
+            } else if (encoding.format == FORMAT_PSEUDO) {
+                expandPseudo(encoding, lexer);
+            } else {
+                emit(translateToMachineCode(encoding, lexer));
+            }
+        }
+        List<Fixup> unresolved = new ArrayList<>();
+        for (Fixup fixup : fixups) {
+            Integer target = symbols.get(fixup.symbol);
+            if (target == null || fixup.format == FIXUP_ADDRESS || fixup.format == FIXUP_WORD) {
+                unresolved.add(fixup);
+            } else {
+                commands[fixup.index] = patch(commands[fixup.index], fixup, target - 4 * fixup.index);
+            }
+        }
+        fixups = unresolved;
+    }
 
-            int machineCode = translateToMachineCode(command, String.join(",", arguments));
-            commands.add(machineCode);
+    private void defineLabel(AsmLexer lexer) {
+        String label = lexer.labelText();
+        if (symbols.containsKey(label) || dataSymbols.containsKey(label)) {
+            throw new IllegalArgumentException("Line " + lexer.line() + ": duplicate label " + label);
+        }
+        if (inData) {
+            dataSymbols.put(label, dataSize);
+        } else {
+            symbols.put(label, 4 * size);
         }
     }
 
-    public List<Integer> getCommands() {
-        return commands;
+    // метки команд: смещение от начала команд модуля
+    Map<String, Integer> symbols() {
+        return symbols;
     }
 
-    private int translateToMachineCode(String command, String args) {
-        String[] operands = args.split("[ ,()]+");
-        operands = Arrays.stream(operands).filter(s -> !s.isEmpty()).toArray(String[]::new);
+    // метки данных: смещение от начала секции данных модуля
+    Map<String, Integer> dataSymbols() {
+        return dataSymbols;
+    }
 
-        switch (command) {
-            // RV32M
-            case "mul":
-                return encodeRType(0, 0x1, operands);
-            case "mulh":
-                return encodeRType(1, 0x1, operands);
-            case "mulhsu":
-                return encodeRType(2, 0x1, operands);
-            case "mulhu":
-                return encodeRType(3, 0x1, operands);
-            case "div":
-                return encodeRType(4, 0x1, operands);
-            case "divu":
-                return encodeRType(5, 0x1, operands);
-            case "rem":
-                return encodeRType(6, 0x1, operands);
-            case "remu":
-                return encodeRType(7, 0x1, operands);
+    // размер образа в словах: команды и данные
+    int size() {
+        return size + (dataSize + 3) / 4;
+    }
 
-            // RV32I R-type
-            case "add":
-                return encodeRType(0, 0x0, operands);
-            case "sub":
-                return encodeRType(0, 0x20, operands);
-            case "sll":
-                return encodeRType(1, 0x0, operands);
-            case "slt":
-                return encodeRType(2, 0x0, operands);
-            case "sltu":
-                return encodeRType(3, 0x0, operands);
-            case "xor":
-                return encodeRType(4, 0x0, operands);
-            case "srl":
-                return encodeRType(5, 0x0, operands);
-            case "sra":
-                return encodeRType(5, 0x20, operands);
-            case "or":
-                return encodeRType(6, 0x0, operands);
-            case "and":
-                return encodeRType(7, 0x0, operands);
+    // число команд; данные начинаются сразу за ними
+    public int textSize() {
+        return size;
+    }
 
-            // S-type
-            case "sb":
-                return encodeSType(0, operands);
-            case "sh":
-                return encodeSType(1, operands);
-            case "sw":
-                return encodeSType(2, operands);
+    List<Fixup> unresolved() {
+        return fixups;
+    }
 
-            // B-type
-            case "beq":
-                return encodeBType(0, operands);
-            case "bne":
-                return encodeBType(1, operands);
-            case "blt":
-                return encodeBType(4, operands);
-            case "bge":
-                return encodeBType(5, operands);
-            case "bltu":
-                return encodeBType(6, operands);
-            case "bgeu":
-                return encodeBType(7, operands);
+    // Дописывает оставшиеся ссылки. textBase и dataBase - смещения команд и данных модуля от начала
+    // общего образа (образ грузится с CPU.TEXT_START); свои метки разрешаются по ним, чужие - по globals,
+    // где значения - смещения в том же образе. Ненайденные метки остаются неразрешёнными.
+    void link(Map<String, Integer> globals, int textBase, int dataBase) {
+        List<Fixup> unresolved = new ArrayList<>();
+        for (Fixup fixup : fixups) {
+            Integer target = address(fixup.symbol, textBase, dataBase);
+            if (target == null) {
+                target = globals.get(fixup.symbol);
+            }
+            if (target == null) {
+                unresolved.add(fixup);
+            } else if (fixup.format == FIXUP_WORD) {
+                putData(fixup.index, CPU.TEXT_START + target, 4);
+            } else if (fixup.format == FIXUP_ADDRESS) {
+                int address = CPU.TEXT_START + target;
+                int lo = address << 20 >> 20;
+                int hi = (address - lo) >> 12;
+                if (hi < -2048 || hi > 2047) {
+                    throw new IllegalArgumentException(String.format("Line %d: address 0x%x of %s does not fit la/li, "
+                            + "which reach only below 0x%x; move the data lower or build the address with li and slli",
+                            fixup.line, address, fixup.symbol, LA_LIMIT));
+                }
+                commands[fixup.index] = (commands[fixup.index] & 0x000FFFFF) | ((hi & 0xFFF) << 20);
+                commands[fixup.index + 2] = (commands[fixup.index + 2] & 0x000FFFFF) | ((lo & 0xFFF) << 20);
+            } else {
+                commands[fixup.index] = patch(commands[fixup.index], fixup, target - (textBase + 4 * fixup.index));
+            }
+        }
+        fixups = unresolved;
+        linked = true;
+    }
 
-            // I-type
-            case "addi":
-                return encodeIType(0x13, 0, operands, 12);
-            case "slti":
-                return encodeIType(0x13, 2, operands, 12);
-            case "sltiu":
-                return encodeIType(0x13, 3, operands, 12);
-            case "xori":
-                return encodeIType(0x13, 4, operands, 12);
-            case "ori":
-                return encodeIType(0x13, 6, operands, 12);
-            case "andi":
-                return encodeIType(0x13, 7, operands, 12);
-            case "slli":
-                return encodeIType(0x13, 1, operands, 5);
-            case "srli", "srai":
-                return encodeIType(0x13, 5, operands, 5);
+    private Integer address(String symbol, int textBase, int dataBase) {
+        Integer offset = symbols.get(symbol);
+        if (offset != null) {
+            return textBase + offset;
+        }
+        offset = dataSymbols.get(symbol);
+        return offset == null ? null : dataBase + offset;
+    }
 
-            // Load
-            case "lb":
-                return encodeLoad(0, operands);
-            case "lh":
-                return encodeLoad(1, operands);
-            case "lw":
-                return encodeLoad(2, operands);
-            case "lbu":
-                return encodeLoad(4, operands);
-            case "lhu":
-                return encodeLoad(5, operands);
-
-            // J-type
-            case "jal":
-                return encodeJType(operands);
-
-            // U-type
-            case "lui":
-                return encodeUType(0x37, operands);
-            case "auipc":
-                return encodeUType(0x17, operands);
-
-            // I-type (JALR)
-            case "jalr":
-                return encodeIType(0x67, 0, operands, 12);
+    private void checkResolved() {
+        if (!fixups.isEmpty()) {
+            Fixup fixup = fixups.get(0);
+            throw new IllegalArgumentException("Line " + fixup.line + ": undefined label " + fixup.symbol);
+        }
+    }
 
-            // Environment
-            case "ecall":
-                return 0x00000073;
-            case "ebreak":
-                return 0x00100073;
-            case "pause":
-                return 0x100000F;
-            case "fence.tso":
-                return 0x8330000F;
-            case "fence":
-                return encodeFence(operands);
+    // Метка в операнде ветвления или jal - смещение относительно адреса самой команды
+    private static int patch(int command, Fixup fixup, int offset) {
+        if (fixup.format == FORMAT_B) {
+            if (offset < -4096 || offset > 4094) {
+                throw new IllegalArgumentException("Line " + fixup.line + ": branch target out of range " + fixup.symbol);
+            }
+            return (command & 0x01FFF07F) | bImmediate(offset);
+        }
+        if (offset < -(1 << 20) || offset >= (1 << 20)) {
+            throw new IllegalArgumentException("Line " + fixup.line + ": jump target out of range " + fixup.symbol);
+        }
+        return (command & 0x00000FFF) | jImmediate(offset);
+    }
+
+    // числовой операнд или 0 с отложенной ссылкой на метку из следующей команды
+    private int immediateOrLabel(int format, AsmLexer operands, int i) {
+        if (!operands.isSymbol(i)) {
+            return operands.immediate(i);
+        }
+        fixups.add(new Fixup(size, format, operands.operandText(i), operands.line()));
+        return 0;
+    }
+
+    private void expandPseudo(Encoding e, AsmLexer operands) {
+        switch (e.opcode) {
+            case PSEUDO_NOP:
+                emit(iType(0x13, 0, 0, 0, 0));
+                break;
+            case PSEUDO_MV:
+                emit(iType(0x13, 0, operands.register(0, registers), operands.register(1, registers), 0));
+                break;
+            case PSEUDO_NOT:
+                emit(iType(0x13, 4, operands.register(0, registers), operands.register(1, registers), -1));
+                break;
+            case PSEUDO_NEG:
+                emit((0x20 << 25) | (operands.register(1, registers) << 20) | (operands.register(0, registers) << 7) | 0x33);
+                break;
+            case PSEUDO_LI:
+            case PSEUDO_LA: {
+                int rd = operands.register(0, registers);
+                if (operands.isSymbol(1)) {
+                    fixups.add(new Fixup(size, FIXUP_ADDRESS, operands.operandText(1), operands.line()));
+                    emit(iType(0x13, 0, rd, 0, 0));
+                    emit(iType(0x13, 1, rd, rd, 12));
+                    emit(iType(0x13, 0, rd, rd, 0));
+                } else {
+                    loadImmediate(rd, operands.immediate(1));
+                }
+                break;
+            }
+            case PSEUDO_J:
+                emit(jImmediate(immediateOrLabel(FORMAT_J, operands, 0)) | 0x6F);
+                break;
+            case PSEUDO_CALL:
+                emit(jImmediate(immediateOrLabel(FORMAT_J, operands, 0)) | (1 << 7) | 0x6F);
+                break;
+            case PSEUDO_JR:
+                emit(iType(0x67, 0, 0, operands.register(0, registers), 0));
+                break;
+            case PSEUDO_RET:
+                emit(iType(0x67, 0, 0, 1, 0));
+                break;
+            case PSEUDO_BRANCH_ZERO: {
+                int rs = operands.register(0, registers);
+                emit(bImmediate(immediateOrLabel(FORMAT_B, operands, 1)) | (rs << 15) | (e.funct3 << 12) | 0x63);
+                break;
+            }
+            case PSEUDO_BRANCH_ZERO_SWAPPED: {
+                int rs = operands.register(0, registers);
+                emit(bImmediate(immediateOrLabel(FORMAT_B, operands, 1)) | (rs << 20) | (e.funct3 << 12) | 0x63);
+                break;
+            }
+            default: {
+                int rs1 = operands.register(1, registers);
+                int rs2 = operands.register(0, registers);
+                emit(bImmediate(immediateOrLabel(FORMAT_B, operands, 2)) | (rs2 << 20) | (rs1 << 15) | (e.funct3 << 12) | 0x63);
+                break;
+            }
+        }
+    }
+
+    // lui в этом процессоре не сдвигает immediate, поэтому константы собираются из addi и slli:
+    // 12 бит - одна команда, до 24 бит - три, остальные - пять
+    private void loadImmediate(int rd, int value) {
+        int lo = value << 20 >> 20;
+        if (lo == value) {
+            emit(iType(0x13, 0, rd, 0, value));
+            return;
+        }
+        loadImmediate(rd, (value - lo) >> 12);
+        emit(iType(0x13, 1, rd, rd, 12));
+        if (lo != 0) {
+            emit(iType(0x13, 0, rd, rd, lo));
+        }
+    }
+
+    private static int iType(int opcode, int funct3, int rd, int rs1, int imm) {
+        return ((imm & 0xFFF) << 20) | (rs1 << 15) | (funct3 << 12) | (rd << 7) | opcode;
+    }
 
+    private void directive(Encoding e, AsmLexer operands) {
+        switch (e.opcode) {
+            case DIRECTIVE_TEXT:
+                inData = false;
+                break;
+            case DIRECTIVE_DATA:
+                inData = true;
+                break;
+            case DIRECTIVE_WORD:
+            case DIRECTIVE_HALF:
+            case DIRECTIVE_BYTE: {
+                checkData(operands);
+                int width = e.opcode == DIRECTIVE_WORD ? 4 : e.opcode == DIRECTIVE_HALF ? 2 : 1;
+                for (int i = 0; i < operands.operandCount; i++) {
+                    int value;
+                    if (width == 4 && operands.isSymbol(i)) {
+                        fixups.add(new Fixup(dataSize, FIXUP_WORD, operands.operandText(i), operands.line()));
+                        value = 0;
+                    } else {
+                        value = operands.immediate(i);
+                    }
+                    reserveData(width);
+                    putData(dataSize - width, value, width);
+                }
+                break;
+            }
+            case DIRECTIVE_SPACE:
+                checkData(operands);
+                reserveData(operands.immediate(0));
+                break;
+            case DIRECTIVE_ALIGN: {
+                int alignment = 1 << operands.immediate(0);
+                if (inData) {
+                    reserveData((alignment - dataSize % alignment) % alignment);
+                } else {
+                    while (4 * size % alignment != 0) {
+                        emit(iType(0x13, 0, 0, 0, 0));
+                    }
+                }
+                break;
+            }
             default:
-                throw new IllegalArgumentException("Unknown instruction: " + command);
+                break;
         }
     }
 
-    private int parseImmediate(String number) {
-        int value;
-        if (number.startsWith("-0x") | number.startsWith("-0X")) {
-            value = Integer.parseInt(number.substring(3), 16) * -1;
-        } else if (number.startsWith("0x") | number.startsWith("0X")) {
-            value = Integer.parseInt(number.substring(2), 16);
-        } else {
-            value = Integer.parseInt(number);
+    private void checkData(AsmLexer operands) {
+        if (!inData) {
+            throw new IllegalArgumentException("Line " + operands.line() + ": " + operands.mnemonicText()
+                    + " outside .data section");
         }
-        return value;
     }
 
-    private int encodeRType(int funct3, int funct7, String[] operands) {
-        int rd = getRegister(operands[0]);
-        int rs1 = getRegister(operands[1]);
-        int rs2 = getRegister(operands[2]);
-        return (funct7 << 25) | (rs2 << 20) | (rs1 << 15) | (funct3 << 12) | (rd << 7) | 51;
+    // новые байты данных нулевые
+    private void reserveData(int bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("Negative data size: " + bytes);
+        }
+        if (dataSize + bytes > data.length) {
+            data = Arrays.copyOf(data, Math.max(2 * data.length, dataSize + bytes));
+        }
+        dataSize += bytes;
+    }
+
+    private void putData(int offset, int value, int width) {
+        for (int i = 0; i < width; i++) {
+            data[offset + i] = (byte) (value >> (8 * i));
+        }
     }
 
-    private int encodeIType(int opcode, int funct3, String[] operands, int immBits) {
-        int rd = getRegister(operands[0]);
-        int rs1 = getRegister(operands[1]);
-        int imm = parseImmediate(operands[2]);
+    private void emit(int command) {
+        if (size == commands.length) {
+            commands = Arrays.copyOf(commands, 2 * size);
+        }
+        commands[size++] = command;
+    }
+
+    // образ отдельного модуля: команды, затем данные в little-endian
+    public int[] getCommands() {
+        int[] image = Arrays.copyOf(text(), size());
+        int[] words = dataWords();
+        System.arraycopy(words, 0, image, size, words.length);
+        return image;
+    }
+
+    // команды со всеми ссылками; без link() модуль компонуется сам по себе, данные сразу за командами
+    int[] text() {
+        if (!linked) {
+            link(Collections.emptyMap(), 0, 4 * size);
+        }
+        checkResolved();
+        return Arrays.copyOf(commands, size);
+    }
+
+    // секция данных, дополненная до целого числа слов
+    int[] dataWords() {
+        int[] words = new int[(dataSize + 3) / 4];
+        for (int i = 0; i < dataSize; i++) {
+            words[i / 4] |= (data[i] & 0xFF) << (8 * (i % 4));
+        }
+        return words;
+    }
+
+    private int translateToMachineCode(Encoding encoding, AsmLexer operands) {
+        switch (encoding.format) {
+            case FORMAT_R:
+                return encodeRType(encoding, operands);
+            case FORMAT_I:
+                return encodeIType(encoding, operands, 12);
+            case FORMAT_SHIFT:
+                return encodeIType(encoding, operands, 5);
+            case FORMAT_LOAD:
+                return encodeLoad(encoding, operands);
+            case FORMAT_S:
+                return encodeSType(encoding, operands);
+            case FORMAT_B:
+                return encodeBType(encoding, operands);
+            case FORMAT_J:
+                return encodeJType(encoding, operands);
+            case FORMAT_U:
+                return encodeUType(encoding, operands);
+            case FORMAT_FENCE:
+                return encodeFence(encoding, operands);
+            default:
+                return encoding.opcode;
+        }
+    }
+
+    private int encodeRType(Encoding e, AsmLexer operands) {
+        int rd = operands.register(0, registers);
+        int rs1 = operands.register(1, registers);
+        int rs2 = operands.register(2, registers);
+        return (e.funct7 << 25) | (rs2 << 20) | (rs1 << 15) | (e.funct3 << 12) | (rd << 7) | e.opcode;
+    }
+
+    private int encodeIType(Encoding e, AsmLexer operands, int immBits) {
+        if (e.opcode == 0x67) {
+            checkNoLabel(e, operands);
+        }
+        int rd = operands.register(0, registers);
+        int rs1 = operands.register(1, registers);
+        int imm = operands.immediate(2);
         imm = imm & ((1 << immBits) - 1);
-        return (imm << 20) | (rs1 << 15) | (funct3 << 12) | (rd << 7) | opcode;
+        return (e.funct7 << 25) | (imm << 20) | (rs1 << 15) | (e.funct3 << 12) | (rd << 7) | e.opcode;
     }
 
-    private int encodeLoad(int funct3, String[] operands) {
-        int rd = getRegister(operands[0]);
-        int offset = parseImmediate(operands[1]);
-        int rs1 = getRegister(operands[2]);
+    // jalr переходит на rs1 + imm: смещение метки от самой команды дало бы неверный адрес, а %lo
+    // пары auipc/jalr здесь не поддерживается (lui и auipc не сдвигают immediate), поэтому метку не принимаем
+    private void checkNoLabel(Encoding e, AsmLexer operands) {
+        for (int i = 1; i < operands.operandCount; i++) {
+            if (operands.isSymbol(i) && !operands.isRegister(i, registers)) {
+                throw new IllegalArgumentException("Line " + operands.line() + ": " + e.mnemonic
+                        + " does not take a label operand " + operands.operandText(i) + ", use jal, call or la + jalr");
+            }
+        }
+    }
+
+    private int encodeLoad(Encoding e, AsmLexer operands) {
+        int rd = operands.register(0, registers);
+        int offset = operands.immediate(1);
+        int rs1 = operands.register(2, registers);
         offset = offset & 0xFFF;
-        return (offset << 20) | (rs1 << 15) | (funct3 << 12) | (rd << 7) | 3;
+        return (offset << 20) | (rs1 << 15) | (e.funct3 << 12) | (rd << 7) | e.opcode;
     }
 
-    private int encodeSType(int funct3, String[] operands) {
-        int rs2 = getRegister(operands[0]);
-        int offset = parseImmediate(operands[1]);
-        int rs1 = getRegister(operands[2]);
+    private int encodeSType(Encoding e, AsmLexer operands) {
+        int rs2 = operands.register(0, registers);
+        int offset = operands.immediate(1);
+        int rs1 = operands.register(2, registers);
         int imm11_5 = (offset >> 5) & 0x7F;
         int imm4_0 = offset & 0x1F;
-        return (imm11_5 << 25) | (rs2 << 20) | (rs1 << 15) | (funct3 << 12) | (imm4_0 << 7) | 35;
+        return (imm11_5 << 25) | (rs2 << 20) | (rs1 << 15) | (e.funct3 << 12) | (imm4_0 << 7) | e.opcode;
+    }
+
+    private int encodeBType(Encoding e, AsmLexer operands) {
+        int rs1 = operands.register(0, registers);
+        int rs2 = operands.register(1, registers);
+        int offset = immediateOrLabel(e.format, operands, 2);
+        return bImmediate(offset) | (rs2 << 20) | (rs1 << 15) | (e.funct3 << 12) | e.opcode;
     }
 
-    private int encodeBType(int funct3, String[] operands) {
-        int rs1 = getRegister(operands[0]);
-        int rs2 = getRegister(operands[1]);
-        int offset = parseImmediate(operands[2]);
+    private static int bImmediate(int offset) {
         int imm12 = (offset >> 12) & 0x1;
         int imm10_5 = (offset >> 5) & 0x3F;
         int imm4_1 = (offset >> 1) & 0xF;
         int imm11 = (offset >> 11) & 0x1;
-        return (imm12 << 31) | (imm10_5 << 25) | (rs2 << 20) | (rs1 << 15) | (funct3 << 12) | (imm4_1 << 8) | (imm11 << 7) | 99;
+        return (imm12 << 31) | (imm10_5 << 25) | (imm4_1 << 8) | (imm11 << 7);
     }
 
-    private int encodeUType(int opcode, String[] operands) {
-        int rd = getRegister(operands[0]);
-        int imm = parseImmediate(operands[1]);
+    private int encodeUType(Encoding e, AsmLexer operands) {
+        int rd = operands.register(0, registers);
+        int imm = operands.immediate(1);
         imm = imm & 0xFFFFF;
-        return (imm << 12) | (rd << 7) | opcode;
+        return (imm << 12) | (rd << 7) | e.opcode;
+    }
+
+    private int encodeJType(Encoding e, AsmLexer operands) {
+        int rd = operands.register(0, registers);
+        int offset = immediateOrLabel(e.format, operands, 1);
+        return jImmediate(offset) | (rd << 7) | e.opcode;
     }
 
-    private int encodeJType(String[] operands) {
-        int rd = getRegister(operands[0]);
-        int offset = parseImmediate(operands[1]);
+    private static int jImmediate(int offset) {
         int imm20 = (offset >> 20) & 0x1;
         int imm10_1 = (offset >> 1) & 0x3FF;
         int imm11 = (offset >> 11) & 0x1;
         int imm19_12 = (offset >> 12) & 0xFF;
-        return (imm20 << 31) | (imm10_1 << 21) | (imm11 << 20) | (imm19_12 << 12) | (rd << 7) | 0x6F;
-    }
-
-    private int encodeFence(String[] operands) {
-        String predS = operands[0];
-        String succS = operands[1];
-        long pred = 0L, succ = 0L;
-        try {
-            pred = Long.decode(predS);
-        } catch (NumberFormatException e) {
-            for (int i = 0; i < predS.length(); i++) {
-                if ('r' == predS.charAt(i)) {
-                    pred += 1;
-                } else if ('w' == predS.charAt(i)) {
-                    pred += 2;
-                } else if ('i' == predS.charAt(i)) {
-                    pred += 4;
-                } else if ('o' == predS.charAt(i)) {
-                    pred += 8;
-                }
-            }
-        }
-        try {
-            succ = Long.decode(succS);
-        } catch (NumberFormatException e) {
-            for (int i = 0; i < succS.length(); i++) {
-                if ('r' == succS.charAt(i)) {
-                    succ += 1;
-                } else if ('w' == succS.charAt(i)) {
-                    succ += 2;
-                } else if ('i' == succS.charAt(i)) {
-                    succ += 4;
-                } else if ('o' == succS.charAt(i)) {
-                    succ += 8;
-                }
-            }
-        }
-        long imm = (succ << 4) | pred;
-        return (int) (imm << 20 | 0b0001111);
+        return (imm20 << 31) | (imm10_1 << 21) | (imm11 << 20) | (imm19_12 << 12);
     }
 
-    private int getRegister(String name) {
-        name = name.trim().toLowerCase();
-        if (!registerMap.containsKey(name)) {
-            throw new IllegalArgumentException("Unknown register: " + name);
-        }
-        return registerMap.get(name);
-    }
-
-    private byte[] toLittleEndian(int value) {
-        return new byte[]{
-                (byte) (value & 0xFF),
-                (byte) ((value >> 8) & 0xFF),
-                (byte) ((value >> 16) & 0xFF),
-                (byte) ((value >> 24) & 0xFF)
-        };
+    private int encodeFence(Encoding e, AsmLexer operands) {
+        long pred = operands.fenceSet(0);
+        long succ = operands.fenceSet(1);
+        long imm = (succ << 4) | pred;
+        return (int) (imm << 20 | e.opcode);
     }
 }
@@ -0,0 +1,207 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+// Ассемблирование множества файлов в одном JVM: каждый файл разбирается и кодируется в своей задаче,
+// переходы на метки внутри файла разрешаются сразу. С --bin модули склеиваются в один образ в порядке
+// аргументов: сначала команды всех файлов, за ними их секции данных, - и во втором проходе адреса и ссылки
+// между файлами дописываются по общей таблице меток.
+// С --out-dir каждый файл пишется в <dir>/<имя>.bin и может ссылаться только на свои метки.
+// Запуск: java Main --batch (--bin <file> | --out-dir <dir>) [--threads N] <file.asm | dir> ...
+public class BatchAssembler {
+    private static final String USAGE = "Usage: --batch (--bin <output_file> | --out-dir <dir>) [--threads N] <file.asm | dir> ...";
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String outputFileName = null;
+        String outputDir = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<String> inputs = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--batch":
+                    break;
+                case "--asm":
+                    inputs.add(args[++i]);
+                    break;
+                case "--bin":
+                    outputFileName = args[++i];
+                    break;
+                case "--out-dir":
+                    outputDir = args[++i];
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    if (args[i].startsWith("--")) {
+                        System.err.println("Unknown argument: " + args[i] + ". " + USAGE);
+                        System.exit(1);
+                    }
+                    inputs.add(args[i]);
+            }
+        }
+
+        if (inputs.isEmpty() || (outputFileName == null) == (outputDir == null)) {
+            System.err.println("Expected input files and exactly one of --bin, --out-dir. " + USAGE);
+            System.exit(1);
+        }
+
+        List<Path> files = expand(inputs);
+        try {
+            if (outputDir != null) {
+                Files.createDirectories(Paths.get(outputDir));
+                assembleEach(files, Paths.get(outputDir), threads);
+            } else {
+                int[] image = assembleLinked(files, threads);
+                Assembler.writeBinaryFile(outputFileName, image, image.length);
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    // каталоги раскрываются в отсортированный список *.asm
+    private static List<Path> expand(List<String> inputs) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (String input : inputs) {
+            Path path = Paths.get(input);
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> list = Files.list(path)) {
+                    list.filter(p -> p.toString().endsWith(".asm")).sorted().forEach(files::add);
+                }
+            } else {
+                files.add(path);
+            }
+        }
+        return files;
+    }
+
+    static void assembleEach(List<Path> files, Path outputDir, int threads) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Object>> tasks = new ArrayList<>(files.size());
+            for (Path file : files) {
+                tasks.add(pool.submit(() -> {
+                    Assembler module = parse(file);
+                    String name = file.getFileName().toString().replaceFirst("\\.asm$", "") + ".bin";
+                    module.writeBinaryFile(outputDir.resolve(name).toString());
+                    return null;
+                }));
+            }
+            await(files, tasks);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    static int[] assembleLinked(List<Path> files, int threads) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Assembler>> parsed = new ArrayList<>(files.size());
+            for (Path file : files) {
+                parsed.add(pool.submit(() -> parse(file)));
+            }
+            List<Assembler> modules = await(files, parsed);
+
+            // раскладка образа: команды всех модулей подряд, затем данные всех модулей, каждые с границы слова
+            int[] textBases = new int[modules.size()];
+            int[] dataBases = new int[modules.size()];
+            int size = 0;
+            for (int i = 0; i < modules.size(); i++) {
+                textBases[i] = 4 * size;
+                size += modules.get(i).textSize();
+            }
+            for (int i = 0; i < modules.size(); i++) {
+                dataBases[i] = 4 * size;
+                size += modules.get(i).size() - modules.get(i).textSize();
+            }
+
+            // второй проход: общая таблица меток; метка, объявленная в нескольких файлах,
+            // видна только внутри своих файлов
+            Map<String, Integer> globals = new HashMap<>();
+            Set<String> ambiguous = new HashSet<>();
+            for (int i = 0; i < modules.size(); i++) {
+                define(globals, ambiguous, modules.get(i).symbols(), textBases[i]);
+                define(globals, ambiguous, modules.get(i).dataSymbols(), dataBases[i]);
+            }
+            globals.keySet().removeAll(ambiguous);
+
+            List<Future<int[][]>> linked = new ArrayList<>(modules.size());
+            for (int i = 0; i < modules.size(); i++) {
+                Assembler module = modules.get(i);
+                int textBase = textBases[i];
+                int dataBase = dataBases[i];
+                linked.add(pool.submit(() -> {
+                    module.link(globals, textBase, dataBase);
+                    for (Assembler.Fixup fixup : module.unresolved()) {
+                        if (ambiguous.contains(fixup.symbol)) {
+                            throw new IllegalArgumentException("Line " + fixup.line + ": label " + fixup.symbol
+                                    + " is defined in several files");
+                        }
+                    }
+                    return new int[][]{module.text(), module.dataWords()};
+                }));
+            }
+
+            int[] image = new int[size];
+            List<int[][]> sections = await(files, linked);
+            for (int i = 0; i < sections.size(); i++) {
+                int[] text = sections.get(i)[0];
+                int[] data = sections.get(i)[1];
+                System.arraycopy(text, 0, image, textBases[i] / 4, text.length);
+                System.arraycopy(data, 0, image, dataBases[i] / 4, data.length);
+            }
+            return image;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void define(Map<String, Integer> globals, Set<String> ambiguous, Map<String, Integer> symbols, int base) {
+        for (Map.Entry<String, Integer> symbol : symbols.entrySet()) {
+            if (globals.putIfAbsent(symbol.getKey(), base + symbol.getValue()) != null) {
+                ambiguous.add(symbol.getKey());
+            }
+        }
+    }
+
+    private static Assembler parse(Path file) throws IOException {
+        Assembler module = new Assembler(Main.registerMap);
+        module.parse(AsmLexer.open(file.toString()));
+        return module;
+    }
+
+    // собирает результаты; ошибки всех файлов выводятся вместе, с именем файла
+    private static <T> List<T> await(List<Path> files, List<Future<T>> tasks) throws InterruptedException {
+        List<T> results = new ArrayList<>(tasks.size());
+        StringBuilder errors = new StringBuilder();
+        for (int i = 0; i < tasks.size(); i++) {
+            try {
+                results.add(tasks.get(i).get());
+            } catch (ExecutionException e) {
+                if (errors.length() > 0) {
+                    errors.append(System.lineSeparator());
+                }
+                errors.append(files.get(i)).append(": ").append(e.getCause().getMessage());
+            }
+        }
+        if (errors.length() > 0) {
+            throw new IllegalArgumentException(errors.toString());
+        }
+        return results;
+    }
+}
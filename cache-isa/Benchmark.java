@@ -0,0 +1,294 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.function.LongSupplier;
+import java.util.regex.Pattern;
+
+// Замеры горячих путей симулятора: ассемблирование, исполнение программ, кэши, Memory.
+// Сами замеры (cases) общие с JMH-модулем jmh/bench/SimulatorBenchmark.java, который собирается
+// mvn -P jmh package и даёт отдельные JVM на замер, Blackhole и профилировщик выделений (-prof gc):
+//   java -jar target/benchmarks.jar [-p name=<замер>] [-prof gc]
+// Этот класс - быстрый прогон без сборки, в одной JVM: прогревочные итерации, затем измерительные
+// фиксированной длительности; результат каждого вызова складывается в sink, чтобы JIT не выбросил работу.
+// Для каждого замера - операций в секунду (среднее и стандартное отклонение по итерациям) и байт на операцию.
+// Запуск: java -classpath . Benchmark [--filter <regex>] [--warmup N] [--iterations N] [--time ms] [--csv <file>]
+//         [--list]
+public class Benchmark {
+    private static final String USAGE = "Usage: Benchmark [--filter <regex>] [--warmup N] [--iterations N] "
+            + "[--time ms] [--csv <file>] [--list]";
+    private static final int PATTERN_SIZE = 1 << 16;
+    private static final int LOOP_ITERATIONS = 100_000;
+
+    static long sink;
+
+    static final class Case {
+        final String name;
+        final String unit;
+        final long operations; // операций замера за один вызов body
+        final LongSupplier body;
+
+        Case(String name, String unit, long operations, LongSupplier body) {
+            this.name = name;
+            this.unit = unit;
+            this.operations = operations;
+            this.body = body;
+        }
+    }
+
+    static final class Result {
+        final Case benchmark;
+        final double mean;
+        final double deviation;
+        final double bytesPerOperation;
+
+        Result(Case benchmark, double mean, double deviation, double bytesPerOperation) {
+            this.benchmark = benchmark;
+            this.mean = mean;
+            this.deviation = deviation;
+            this.bytesPerOperation = bytesPerOperation;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Pattern filter = Pattern.compile(".*");
+        int warmup = 3;
+        int iterations = 5;
+        long time = 1000;
+        String csvFileName = null;
+        boolean list = false;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--filter":
+                    filter = Pattern.compile(args[++i]);
+                    break;
+                case "--warmup":
+                    warmup = Integer.parseInt(args[++i]);
+                    break;
+                case "--iterations":
+                    iterations = Integer.parseInt(args[++i]);
+                    break;
+                case "--time":
+                    time = Long.parseLong(args[++i]);
+                    break;
+                case "--csv":
+                    csvFileName = args[++i];
+                    break;
+                case "--list":
+                    list = true;
+                    break;
+                default:
+                    System.err.println("Unknown argument: " + args[i] + ". " + USAGE);
+                    System.exit(1);
+            }
+        }
+
+        if (list) {
+            for (Case benchmark : cases()) {
+                if (filter.matcher(benchmark.name).find()) {
+                    System.out.println(benchmark.name);
+                }
+            }
+            return;
+        }
+
+        System.out.printf("%-32s %5s %16s %14s %12s%n", "Benchmark", "Cnt", "Score", "Error", "B/op");
+        List<Result> results = new ArrayList<>();
+        for (Case benchmark : cases()) {
+            if (!filter.matcher(benchmark.name).find()) {
+                continue;
+            }
+            Result result = measure(benchmark, warmup, iterations, time * 1_000_000);
+            results.add(result);
+            System.out.printf(Locale.ROOT, "%-32s %5d %16.3f +- %12.3f %12.3f  %s%n", benchmark.name, iterations,
+                    result.mean, result.deviation, result.bytesPerOperation, benchmark.unit);
+        }
+
+        if (csvFileName != null) {
+            try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get(csvFileName)))) {
+                out.println("benchmark,unit,iterations,score,error,bytes_per_op");
+                for (Result r : results) {
+                    out.printf(Locale.ROOT, "%s,%s,%d,%.3f,%.3f,%.3f%n", r.benchmark.name, r.benchmark.unit,
+                            iterations, r.mean, r.deviation, r.bytesPerOperation);
+                }
+            }
+        }
+        if (sink == 42) {
+            System.out.println();
+        }
+    }
+
+    private static Result measure(Case benchmark, int warmup, int iterations, long nanos) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        double[] scores = new double[iterations];
+        long allocated = 0;
+        long operations = 0;
+
+        for (int i = -warmup; i < iterations; i++) {
+            long bytes = threads.getThreadAllocatedBytes(threadId);
+            long calls = 0;
+            long start = System.nanoTime();
+            long elapsed;
+            do {
+                sink += benchmark.body.getAsLong();
+                calls++;
+                elapsed = System.nanoTime() - start;
+            } while (elapsed < nanos);
+            bytes = threads.getThreadAllocatedBytes(threadId) - bytes;
+            if (i >= 0) {
+                scores[i] = calls * benchmark.operations * 1e9 / elapsed;
+                allocated += bytes;
+                operations += calls * benchmark.operations;
+            }
+        }
+
+        double mean = Arrays.stream(scores).average().orElse(Double.NaN);
+        double variance = Arrays.stream(scores).map(s -> (s - mean) * (s - mean)).sum() / Math.max(1, iterations - 1);
+        return new Result(benchmark, mean, Math.sqrt(variance), (double) allocated / operations);
+    }
+
+    // замер по имени, для JMH-модуля
+    static Case find(String name) throws IOException {
+        for (Case benchmark : cases()) {
+            if (benchmark.name.equals(name)) {
+                return benchmark;
+            }
+        }
+        throw new IllegalArgumentException("Unknown benchmark: " + name);
+    }
+
+    private static List<Case> cases() throws IOException {
+        List<Case> cases = new ArrayList<>();
+        CacheConfig config = CacheConfig.defaults();
+
+        for (String name : new String[]{"rv32all", "rv32task"}) {
+            byte[] source = Files.readAllBytes(Paths.get(name + ".asm"));
+            cases.add(new Case("assemble." + name, "programs/s", 1, () -> {
+                Assembler assembler = new Assembler(Main.registerMap);
+                assembler.parse(new AsmLexer(ByteBuffer.wrap(source)));
+                return assembler.size();
+            }));
+
+            Assembler assembler = new Assembler(Main.registerMap);
+            assembler.parse(new AsmLexer(ByteBuffer.wrap(source)));
+            addExecute(cases, name, assembler.getCommands(), assembler.textSize(), config);
+        }
+
+        Assembler loop = new Assembler(Main.registerMap);
+        loop.parse(loopProgram(LOOP_ITERATIONS));
+        addExecute(cases, "loop", loop.getCommands(), loop.textSize(), config);
+
+        for (String pattern : new String[]{"sequential", "strided", "random"}) {
+            int[] addresses = addresses(pattern, config);
+            LruCache lru = new LruCache(null, config);
+            cases.add(new Case("cache.lru." + pattern, "accesses/s", addresses.length, () -> {
+                long hits = 0;
+                for (int address : addresses) {
+                    hits += lru.access(address, CacheStats.DATA) ? 1 : 0;
+                }
+                return hits;
+            }));
+            BitPLruCache plru = new BitPLruCache(null, config);
+            cases.add(new Case("cache.plru." + pattern, "accesses/s", addresses.length, () -> {
+                long hits = 0;
+                for (int address : addresses) {
+                    hits += plru.access(address, CacheStats.DATA) ? 1 : 0;
+                }
+                return hits;
+            }));
+        }
+
+        for (String backend : new String[]{"heap", "direct"}) {
+            for (int addrLen : new int[]{config.addrLen, 32}) {
+                if (backend.equals("direct") && addrLen == 32) {
+                    continue; // 4 ГиБ вне кучи - слишком много для замера
+                }
+                Memory memory = Memory.open(backend, addrLen, null);
+                int[] addresses = addresses("random", new CacheConfig(Math.min(addrLen, 24), 1, 1, 4));
+                String name = "memory." + memory.getClass().getSimpleName() + "." + addrLen;
+                cases.add(new Case(name + ".readWord", "words/s", addresses.length, () -> {
+                    long sum = 0;
+                    for (int address : addresses) {
+                        sum += memory.readWord(address);
+                    }
+                    return sum;
+                }));
+                cases.add(new Case(name + ".writeWord", "words/s", addresses.length, () -> {
+                    for (int address : addresses) {
+                        memory.writeWord(address, address);
+                    }
+                    return addresses.length;
+                }));
+            }
+        }
+        return cases;
+    }
+
+    // программа целиком, с загрузкой и раскодированием; score - простых команд в секунду
+    private static void addExecute(List<Case> cases, String name, int[] image, int textSize, CacheConfig config) {
+        CPU probe = new CPU(Memory.allocate(config.addrLen), Main.registerMap, config);
+        probe.executeProgram(image, textSize);
+        long instructions = probe.executed;
+        for (boolean threaded : new boolean[]{false, true}) {
+            Memory memory = Memory.allocate(config.addrLen);
+            cases.add(new Case("execute." + name + (threaded ? ".threaded" : ".interpreter"), "instructions/s",
+                    instructions, () -> {
+                CPU processor = new CPU(memory, Main.registerMap, config);
+                processor.setThreaded(threaded);
+                processor.executeProgram(image, textSize);
+                return processor.executed;
+            }));
+        }
+    }
+
+    // обращения к данным: подряд по словам, с шагом в линию кэша или случайные, в пределах 2^addrLen
+    private static int[] addresses(String pattern, CacheConfig config) {
+        int[] addresses = new int[PATTERN_SIZE];
+        int mask = (int) (config.memSize() - 1) & ~3;
+        Random random = new Random(0);
+        for (int i = 0; i < addresses.length; i++) {
+            switch (pattern) {
+                case "sequential":
+                    addresses[i] = (4 * i) & mask;
+                    break;
+                case "strided":
+                    addresses[i] = (i * config.lineSize) & mask;
+                    break;
+                default:
+                    addresses[i] = random.nextInt() & mask;
+            }
+        }
+        return addresses;
+    }
+
+    // iterations проходов по массиву из 64 слов: чтение, сложение, запись
+    private static List<String> loopProgram(int iterations) {
+        return Arrays.asList(
+                "    li s1, " + iterations,
+                "outer:",
+                "    la t0, array",
+                "    li t1, 64",
+                "inner:",
+                "    lw t2, 0(t0)",
+                "    add t2, t2, s1",
+                "    sw t2, 0(t0)",
+                "    addi t0, t0, 4",
+                "    addi t1, t1, -1",
+                "    bnez t1, inner",
+                "    addi s1, s1, -1",
+                "    bnez s1, outer",
+                ".data",
+                "array:",
+                "    .space 256");
+    }
+}
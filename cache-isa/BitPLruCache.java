@@ -1,138 +1,306 @@
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
-public class BitPLruCache {
-    private static final int CACHE_SETS = 8;
-    private static final int CACHE_WAY = 4;
-    private static final int CACHE_LINE_SIZE = 64;
-    private static final int CACHE_INDEX_LEN = 3;
-    private static final int CACHE_OFFSET_LEN = 6;
+// Кэш с вытеснением bit-pLRU; режимы хранения данных такие же, как у LruCache
+public class BitPLruCache implements Cache {
     private final Memory memory;
+    private final CacheConfig config;
+    private final int ways;
+    private final boolean carriesData;
+    final CacheStats stats = new CacheStats("pLRU");
+    private MissClassifier classifier; // null, если промахи не классифицируются
 
     private static class CacheLine {
         boolean valid = false;
         boolean dirty = false;
         boolean mru = false;
         int tag;
-        int[] data = new int[CACHE_LINE_SIZE];
+        int[] data; // слова линии, только если кэш хранит данные
 
-        CacheLine() {
+        CacheLine(int words) {
+            data = words > 0 ? new int[words] : null;
         }
     }
 
     private final List<List<CacheLine>> sets;
+    // линия, вытесненная последним промахом или fill
+    private boolean evicted;
+    private boolean evictedDirty;
+    private int evictedAddress;
 
-    public BitPLruCache(Memory memory) {
+    public BitPLruCache(Memory memory, CacheConfig config) {
+        this(memory, config, false);
+    }
+
+    public BitPLruCache(Memory memory, CacheConfig config, boolean carriesData) {
         this.memory = memory;
+        this.config = config;
+        this.ways = config.ways;
+        this.carriesData = carriesData;
         this.sets = initializeCacheSets();
     }
 
     private List<List<CacheLine>> initializeCacheSets() {
-        List<List<CacheLine>> cache = new ArrayList<>(CACHE_SETS);
-        for (int i = 0; i < CACHE_SETS; i++) {
-            List<CacheLine> set = new ArrayList<>(CACHE_WAY);
-            for (int j = 0; j < CACHE_WAY; j++) {
-                set.add(new CacheLine());
+        List<List<CacheLine>> cache = new ArrayList<>(config.sets);
+        for (int i = 0; i < config.sets; i++) {
+            List<CacheLine> set = new ArrayList<>(ways);
+            for (int j = 0; j < ways; j++) {
+                set.add(new CacheLine(carriesData ? config.lineSize / 4 : 0));
             }
             cache.add(set);
         }
         return cache;
     }
 
-    public boolean accessPLRU(int tag, int index) {
+    @Override
+    public boolean access(int address, int kind) {
+        int tag = config.tag(address);
+        int index = config.index(address);
         List<CacheLine> set = sets.get(index);
 
-        for (int i = 0; i < CACHE_WAY; i++) {
+        for (int i = 0; i < ways; i++) {
             CacheLine line = set.get(i);
             if (line.valid && line.tag == tag) {
                 line.mru = true;
+                stats.hits[kind]++;
+                if (classifier != null) {
+                    classifier.record(tag, index, kind, true);
+                }
                 return true;
             }
         }
 
-        handleCacheMiss(set, tag);
+        handleCacheMiss(set, index, tag, kind);
         return false;
     }
 
-    public boolean writePLRU(int tag, int index, int data, int offset) {
+    // count обращений подряд к линии сразу после access к ней: бит mru уже стоит, меняется только статистика
+    void repeatHits(int kind, int count) {
+        stats.hits[kind] += count;
+    }
+
+    @Override
+    public boolean write(int address) {
+        int tag = config.tag(address);
+        int index = config.index(address);
         List<CacheLine> set = sets.get(index);
 
-        for (int i = 0; i < CACHE_WAY; i++) {
+        for (int i = 0; i < ways; i++) {
             CacheLine line = set.get(i);
             if (line.valid && line.tag == tag) {
                 line.dirty = true;
                 line.mru = true;
-                line.data[offset] = data;
+                stats.hits[CacheStats.DATA]++;
+                if (classifier != null) {
+                    classifier.record(tag, index, CacheStats.DATA, true);
+                }
                 return true;
             }
         }
 
-        handleWriteMiss(set, tag, offset, data);
+        handleCacheMiss(set, index, tag, CacheStats.DATA).dirty = true;
         return false;
     }
 
-    private void handleCacheMiss(List<CacheLine> set, int tag) {
-        for (int i = 0; i < CACHE_WAY; i++) {
+    // слова линии с этим адресом, если она в кэше и кэш хранит данные; иначе null.
+    // write помечает линию грязной: запись через границу линии задевает соседнюю
+    int[] residentLine(int address, boolean write) {
+        int tag = config.tag(address);
+        List<CacheLine> set = sets.get(config.index(address));
+        for (int i = 0; i < ways; i++) {
             CacheLine line = set.get(i);
-            if (!line.valid || !line.mru) {
-                line.valid = true;
-                line.mru = true;
-                line.tag = tag;
-                resetBits(set, i);
-                return;
+            if (line.valid && line.tag == tag) {
+                line.dirty |= write;
+                return line.data;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean contains(int address) {
+        return find(config.index(address), config.tag(address)) >= 0;
+    }
+
+    @Override
+    public boolean invalidate(int address) {
+        int index = config.index(address);
+        int way = find(index, config.tag(address));
+        if (way < 0) {
+            return false;
+        }
+        CacheLine line = sets.get(index).get(way);
+        boolean dirty = line.dirty;
+        line.valid = false;
+        line.dirty = false;
+        line.mru = false;
+        return dirty;
+    }
+
+    @Override
+    public void fill(int address, boolean dirty) {
+        int tag = config.tag(address);
+        int index = config.index(address);
+        int way = find(index, tag);
+        CacheLine line;
+        if (way >= 0) {
+            line = sets.get(index).get(way);
+            line.mru = true;
+            evicted = false;
+            if (classifier != null) {
+                classifier.record(tag, index, CacheStats.NONE, true);
             }
+        } else {
+            line = handleCacheMiss(sets.get(index), index, tag, CacheStats.NONE);
         }
+        line.dirty |= dirty;
+    }
 
-        set.get(0).valid = true;
-        set.get(0).mru = true;
-        set.get(0).tag = tag;
-        resetBits(set, 0);
+    private int find(int index, int tag) {
+        List<CacheLine> set = sets.get(index);
+        for (int i = 0; i < ways; i++) {
+            CacheLine line = set.get(i);
+            if (line.valid && line.tag == tag) {
+                return i;
+            }
+        }
+        return -1;
     }
 
-    private void handleWriteMiss(List<CacheLine> set, int tag, int offset, int data) {
-        for (int i = 0; i < CACHE_WAY; i++) {
+    // вытесняется первая невалидная или не MRU линия, если все MRU - нулевая
+    private CacheLine handleCacheMiss(List<CacheLine> set, int index, int tag, int kind) {
+        int victim = 0;
+        for (int i = 0; i < ways; i++) {
             CacheLine line = set.get(i);
             if (!line.valid || !line.mru) {
-                if (line.dirty && line.valid) {
-                    writeBackToMemory(line);
-                }
-                line.valid = true;
-                line.dirty = true;
-                line.mru = true;
-                line.tag = tag;
-                line.data[offset] = data;
-                resetBits(set, i);
-                return;
+                victim = i;
+                break;
             }
         }
 
-        if (set.get(0).valid && set.get(0).dirty) {
-            writeBackToMemory(set.get(0));
+        CacheLine line = set.get(victim);
+        if (kind != CacheStats.NONE) {
+            countMiss(line, kind);
+        }
+        if (classifier != null) {
+            classifier.record(tag, index, kind, false);
+        }
+        evicted = line.valid;
+        evictedDirty = line.dirty;
+        if (line.valid) {
+            evictedAddress = config.lineAddress(line.tag, index);
+        }
+        if (line.valid && line.dirty) {
+            writeBackToMemory(line, index);
         }
 
-        set.get(0).valid = true;
-        set.get(0).dirty = true;
-        set.get(0).mru = true;
-        set.get(0).tag = tag;
-        set.get(0).data[offset] = data;
-        resetBits(set, 0);
+        line.valid = true;
+        line.dirty = false;
+        line.mru = true;
+        line.tag = tag;
+        if (carriesData) {
+            memory.readWords(config.lineAddress(tag, index), line.data, 0, line.data.length);
+        }
+        resetBits(set, victim);
+        return line;
+    }
+
+    // записать все грязные линии в память, например в конце симуляции; в статистику не входит
+    void flush() {
+        for (int index = 0; index < config.sets; index++) {
+            for (CacheLine line : sets.get(index)) {
+                if (line.valid && line.dirty && carriesData) {
+                    memory.writeWords(config.lineAddress(line.tag, index), line.data, 0, line.data.length);
+                }
+                line.dirty = false;
+            }
+        }
+    }
+
+    // классификация промахов и гистограммы по наборам, см. MissClassifier
+    void classifyMisses() {
+        classifier = new MissClassifier(config);
+    }
+
+    MissClassifier classifier() {
+        return classifier;
+    }
+
+    @Override
+    public boolean evicted() {
+        return evicted;
+    }
+
+    @Override
+    public boolean evictedDirty() {
+        return evictedDirty;
+    }
+
+    @Override
+    public int evictedAddress() {
+        return evictedAddress;
+    }
+
+    @Override
+    public CacheStats stats() {
+        return stats;
+    }
+
+    private void countMiss(CacheLine displaced, int kind) {
+        stats.misses[kind]++;
+        if (displaced.valid) {
+            stats.evictions[kind]++;
+        } else {
+            stats.coldMisses[kind]++;
+        }
     }
 
     private void resetBits(List<CacheLine> set, int usedIndex) {
-        for (int i = 0; i < CACHE_WAY; i++) {
+        for (int i = 0; i < ways; i++) {
             if (i != usedIndex) {
                 set.get(i).mru = false;
             }
         }
     }
 
-    private void writeBackToMemory(CacheLine line) {
-        int address = line.tag << (CACHE_INDEX_LEN + CACHE_OFFSET_LEN);
-        for (int i = 0; i < CACHE_LINE_SIZE; i++) {
-            memory.write(address + 4 * i, (byte) (line.data[i] & 0xFF));
-            memory.write(address + 4 * i + 1, (byte) ((line.data[i] >> 8) & 0xFF));
-            memory.write(address + 4 * i + 2, (byte) ((line.data[i] >> 16) & 0xFF));
-            memory.write(address + 4 * i + 3, (byte) ((line.data[i] >> 24) & 0xFF));
+    private void writeBackToMemory(CacheLine line, int index) {
+        stats.writeBacks[CacheStats.DATA]++;
+        if (carriesData) {
+            memory.writeWords(config.lineAddress(line.tag, index), line.data, 0, line.data.length);
+        }
+    }
+
+    // Состояние для Snapshot: valid, dirty, mru, tag и данные каждой линии
+    static int stateSize(CacheConfig config, boolean carriesData) {
+        return config.lineCount * (3 + 4 + (carriesData ? config.lineSize : 0));
+    }
+
+    void saveState(ByteBuffer out) {
+        for (List<CacheLine> set : sets) {
+            for (CacheLine line : set) {
+                out.put((byte) (line.valid ? 1 : 0)).put((byte) (line.dirty ? 1 : 0)).put((byte) (line.mru ? 1 : 0));
+                out.putInt(line.tag);
+                if (carriesData) {
+                    out.asIntBuffer().put(line.data);
+                    out.position(out.position() + 4 * line.data.length);
+                }
+            }
+        }
+    }
+
+    void restoreState(ByteBuffer in) {
+        for (List<CacheLine> set : sets) {
+            for (CacheLine line : set) {
+                line.valid = in.get() != 0;
+                line.dirty = in.get() != 0;
+                line.mru = in.get() != 0;
+                line.tag = in.getInt();
+                if (carriesData) {
+                    in.asIntBuffer().get(line.data);
+                    in.position(in.position() + 4 * line.data.length);
+                }
+            }
         }
     }
 }
@@ -0,0 +1,319 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Исполнение программы базовыми блоками: блок заканчивается на B-type/jal/jalr,
+// каждая команда блока один раз превращается в обработчик с уже подставленными регистрами и константами.
+// Первый вход в блок исполняется интерпретатором CPU, компилируется блок со второго: код, пройденный
+// один раз, дешевле проинтерпретировать. Выборка команд идёт группами: команды одной линии кэша подряд,
+// к данным обращается только последняя из них (см. CPU.accessInstructions).
+public class BlockInterpreter {
+    interface Step {
+        void run();
+    }
+
+    // возвращает адрес следующего блока
+    interface Exit {
+        int run();
+    }
+
+    private static final class Block {
+        final Step[] body;
+        final Exit exit;
+        // fetch[i] - сколько команд, начиная с i-й, выбирается одним вызовом accessInstructions;
+        // 0 - команда уже выбрана вместе с предыдущими. Последний элемент - для exit
+        final int[] fetch;
+
+        Block(Step[] body, Exit exit, int[] fetch) {
+            this.body = body;
+            this.exit = exit;
+            this.fetch = fetch;
+        }
+    }
+
+    private final CPU cpu;
+    private final int[] registers;
+    private final Block[] blocks;
+    private final boolean[] entered; // блок уже исполнялся интерпретатором
+    private final CacheConfig config;
+
+    public BlockInterpreter(CPU cpu) {
+        this.cpu = cpu;
+        this.registers = cpu.registers;
+        this.blocks = new Block[(cpu.textEnd - cpu.textStart) >> 2];
+        this.entered = new boolean[blocks.length];
+        this.config = cpu.config();
+    }
+
+    // исполняет блоки, пока программа не завершится или не наберётся limit команд; возвращает число команд
+    public long run(long limit) {
+        long count = 0;
+        int pc = cpu.PC;
+        while (pc >= cpu.textStart && pc < cpu.textEnd && count < limit) {
+            int slot = (pc - cpu.textStart) >> 2;
+            Block block = blocks[slot];
+            if (block == null) {
+                if (!entered[slot]) {
+                    entered[slot] = true;
+                    cpu.PC = pc;
+                    count += interpretBlock();
+                    pc = cpu.PC;
+                    if (cpu.ra) {
+                        break;
+                    }
+                    if (cpu.textModified) {
+                        cpu.textModified = false;
+                        Arrays.fill(blocks, null);
+                    }
+                    continue;
+                }
+                block = compile(pc);
+                blocks[slot] = block;
+            }
+
+            Step[] body = block.body;
+            int[] fetch = block.fetch;
+            int i = 0;
+            while (i < body.length) {
+                if (fetch[i] != 0) {
+                    cpu.accessInstructions(pc + 4 * i, fetch[i]);
+                }
+                body[i++].run();
+                if (cpu.textModified) {
+                    break;
+                }
+            }
+            if (cpu.textModified) {
+                cpu.textModified = false;
+                Arrays.fill(blocks, null);
+                pc += 4 * i;
+                count += i;
+                continue;
+            }
+
+            if (fetch[i] != 0) {
+                cpu.accessInstructions(pc + 4 * i, fetch[i]);
+            }
+            pc = block.exit.run();
+            count += body.length + 1;
+            if (cpu.ra) {
+                // exit вернул адрес с уже прибавленными 4, а интерпретатор останавливается до PC += 4
+                pc -= 4;
+                break;
+            }
+        }
+        cpu.PC = pc;
+        return count;
+    }
+
+    // один блок обычным циклом CPU.run с cpu.PC; возвращает число команд
+    private long interpretBlock() {
+        long count = 0;
+        while (cpu.PC >= cpu.textStart && cpu.PC < cpu.textEnd) {
+            long instruction = cpu.fetchInstruction(cpu.lruCache, cpu.plruCache);
+            cpu.executeInstruction(instruction, cpu.lruCache, cpu.plruCache);
+            count++;
+            if (cpu.ra) {
+                break;
+            }
+            cpu.PC += 4;
+            if (isBlockEnd(instruction) || cpu.textModified) {
+                break;
+            }
+        }
+        return count;
+    }
+
+    private Block compile(int startPc) {
+        List<Step> body = new ArrayList<>();
+        int pc = startPc;
+        while (true) {
+            long instruction = cpu.decodedAt(pc);
+            if (isBlockEnd(instruction) || pc + 4 >= cpu.textEnd) {
+                return new Block(body.toArray(new Step[0]), compileExit(pc, instruction), fetchGroups(startPc, pc));
+            }
+            body.add(compileStep(pc, instruction));
+            pc += 4;
+        }
+    }
+
+    private static boolean isBlockEnd(long instruction) {
+        int op = Decoder.op(instruction);
+        return (op >= Decoder.OP_BEQ && op <= Decoder.OP_BRANCH_BAD) || op == Decoder.OP_JAL || op == Decoder.OP_JALR;
+    }
+
+    // Группа выборки заканчивается на границе линии и на загрузке или записи: обращение к данным
+    // может вытеснить линию команд, поэтому выборки после него переставлять перед ним нельзя
+    private int[] fetchGroups(int startPc, int exitPc) {
+        int[] fetch = new int[((exitPc - startPc) >> 2) + 1];
+        int first = 0;
+        for (int i = 0; i < fetch.length; i++) {
+            int pc = startPc + 4 * i;
+            int op = Decoder.op(cpu.decodedAt(pc));
+            boolean memory = op >= Decoder.OP_LB && op <= Decoder.OP_STORE_BAD;
+            if (i + 1 == fetch.length || memory || line(pc) != line(pc + 4)) {
+                fetch[first] = i + 1 - first;
+                first = i + 1;
+            }
+        }
+        return fetch;
+    }
+
+    private int line(int pc) {
+        return config.lineAddress(config.tag(pc), config.index(pc));
+    }
+
+    private Step compileStep(int pc, long instruction) {
+        final CPU cpu = this.cpu;
+        final int[] r = registers;
+        final int rd = Decoder.rd(instruction);
+        final int rs1 = Decoder.rs1(instruction);
+        final int rs2 = Decoder.rs2(instruction);
+        final int imm = Decoder.imm(instruction);
+
+        // выражения те же, что в CPU.executeInstruction, вместе с его особенностями (SLTU, SRL, REM)
+        switch (Decoder.op(instruction)) {
+            case Decoder.OP_NOP:
+                return () -> {
+                };
+            case Decoder.OP_ADD:
+                return () -> r[rd] = r[rs1] + r[rs2];
+            case Decoder.OP_SUB:
+                return () -> r[rd] = r[rs1] - r[rs2];
+            case Decoder.OP_SLL:
+                return () -> r[rd] = r[rs1] << r[rs2];
+            case Decoder.OP_SLT:
+                return () -> r[rd] = (r[rs1] < r[rs2]) ? 1 : 0;
+            case Decoder.OP_SLTU:
+                return () -> r[rd] = ((int) (r[rs1] & 0xFFFFFFFFL) < (int) (r[rs2] & 0xFFFFFFFFL)) ? 1 : 0;
+            case Decoder.OP_XOR:
+                return () -> r[rd] = r[rs1] ^ r[rs2];
+            case Decoder.OP_SRL:
+                return () -> r[rd] = (int) (r[rs1] & 0xFFFFFFFFL) >> (r[rs2] & 0x1F);
+            case Decoder.OP_SRA:
+                return () -> r[rd] = r[rs1] >> (r[rs2] & 0x1F);
+            case Decoder.OP_OR:
+                return () -> r[rd] = r[rs1] | r[rs2];
+            case Decoder.OP_AND:
+                return () -> r[rd] = r[rs1] & r[rs2];
+            case Decoder.OP_MUL:
+                return () -> r[rd] = r[rs1] * r[rs2];
+            case Decoder.OP_MULH:
+                return () -> r[rd] = (int) (((long) r[rs1] * (long) r[rs2]) >> 32);
+            case Decoder.OP_MULHSU:
+                return () -> r[rd] = (int) ((long) r[rs1] * (Integer.toUnsignedLong(r[rs2])) >> 32);
+            case Decoder.OP_MULHU:
+                return () -> r[rd] = (int) ((r[rs1] & 0xFFFFFFFFL) * (r[rs2] & 0xFFFFFFFFL) >> 32);
+            case Decoder.OP_DIV:
+                return () -> r[rd] = r[rs1] / r[rs2];
+            case Decoder.OP_DIVU:
+                return () -> r[rd] = Integer.divideUnsigned(r[rs1], r[rs2]);
+            case Decoder.OP_REM:
+                return () -> r[rd] = Math.floorMod(r[rs1], r[rs2]);
+            case Decoder.OP_REMU:
+                return () -> r[rd] = Integer.remainderUnsigned(r[rs1], r[rs2]);
+            case Decoder.OP_ADDI:
+                return () -> r[rd] = r[rs1] + imm;
+            case Decoder.OP_SLTI:
+                return () -> r[rd] = (r[rs1] < imm) ? 1 : 0;
+            case Decoder.OP_SLTIU:
+                return () -> r[rd] = ((int) (r[rs1] & 0xFFFFFFFFL) < (int) (imm & 0xFFFFFFFFL)) ? 1 : 0;
+            case Decoder.OP_XORI:
+                return () -> r[rd] = r[rs1] ^ imm;
+            case Decoder.OP_ORI:
+                return () -> r[rd] = r[rs1] | imm;
+            case Decoder.OP_ANDI:
+                return () -> r[rd] = r[rs1] & imm;
+            case Decoder.OP_SLLI:
+                return () -> r[rd] = r[rs1] << imm;
+            case Decoder.OP_SRLI:
+                return () -> r[rd] = (int) (r[rs1] & 0xFFFFFFFFL) >> imm;
+            case Decoder.OP_SRAI:
+                return () -> r[rd] = r[rs1] >> imm;
+            case Decoder.OP_LUI:
+                return () -> r[rd] = imm;
+            case Decoder.OP_AUIPC:
+                final int value = pc + imm;
+                return () -> r[rd] = value;
+            case Decoder.OP_LB:
+            case Decoder.OP_LH:
+            case Decoder.OP_LW:
+            case Decoder.OP_LBU:
+            case Decoder.OP_LHU:
+            case Decoder.OP_LOAD_BAD:
+                final int loadOp = Decoder.op(instruction);
+                final int loadFunct3 = Decoder.funct3(instruction);
+                return () -> cpu.executeLoad(loadOp, rs1, loadFunct3, imm, rd, cpu.lruCache, cpu.plruCache);
+            case Decoder.OP_SB:
+            case Decoder.OP_SH:
+            case Decoder.OP_SW:
+            case Decoder.OP_STORE_BAD:
+                final int storeOp = Decoder.op(instruction);
+                final int storeFunct3 = Decoder.funct3(instruction);
+                return () -> cpu.executeSType(storeOp, rs1, rs2, imm, storeFunct3, cpu.lruCache, cpu.plruCache);
+            default:
+                // недопустимые команды: только сообщение об ошибке
+                return () -> {
+                    cpu.PC = pc;
+                    cpu.executeInstruction(instruction, cpu.lruCache, cpu.plruCache);
+                };
+        }
+    }
+
+    private Exit compileExit(int pc, long instruction) {
+        final CPU cpu = this.cpu;
+        final int[] r = registers;
+        final int rd = Decoder.rd(instruction);
+        final int rs1 = Decoder.rs1(instruction);
+        final int rs2 = Decoder.rs2(instruction);
+        final int imm = Decoder.imm(instruction);
+        final int taken = pc + imm;
+        final int next = pc + 4;
+        final int ra = cpu.raRegister;
+
+        switch (Decoder.op(instruction)) {
+            case Decoder.OP_BEQ:
+                return () -> r[rs1] == r[rs2] ? taken : next;
+            case Decoder.OP_BNE:
+                return () -> r[rs1] != r[rs2] ? taken : next;
+            case Decoder.OP_BLT:
+                return () -> r[rs1] < r[rs2] ? taken : next;
+            case Decoder.OP_BGE:
+                return () -> r[rs1] >= r[rs2] ? taken : next;
+            case Decoder.OP_BLTU:
+                return () -> Integer.compareUnsigned(r[rs1], r[rs2]) < 0 ? taken : next;
+            case Decoder.OP_BGEU:
+                return () -> Integer.compareUnsigned(r[rs1], r[rs2]) >= 0 ? taken : next;
+            case Decoder.OP_JAL:
+                // как CPU.executeJal; следующий блок - цель перехода
+                return () -> {
+                    if (rd != 0) {
+                        r[rd] = next;
+                    }
+                    if (r[rd] == r[ra]) {
+                        cpu.ra = true;
+                    }
+                    return taken;
+                };
+            case Decoder.OP_JALR:
+                // как CPU.executeJalr: PC = цель, и цикл CPU.run прибавляет к нему 4
+                return () -> {
+                    if (rd != 0) {
+                        r[rd] = next;
+                    }
+                    int target = ((r[rs1] + imm) & ~1) + 4;
+                    if (r[rd] == r[ra] || r[rs1] == r[ra]) {
+                        cpu.ra = true;
+                    }
+                    return target;
+                };
+            default:
+                // последняя команда программы и неверный funct3 ветвления
+                Step step = compileStep(pc, instruction);
+                return () -> {
+                    step.run();
+                    return next;
+                };
+        }
+    }
+}
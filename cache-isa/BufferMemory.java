@@ -0,0 +1,174 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+// Память вне кучи: набор ByteBuffer по 1 ГиБ (один буфер не может быть больше 2 ГиБ).
+// direct - буферы ByteBuffer.allocateDirect, mapped - окна MappedByteBuffer на файл-образ:
+// образ подхватывается без копирования, а flush() сохраняет изменения обратно в файл.
+// Перед памятью в образе лежит заголовок на страницу (окна остаются выровненными): magic, addrLen,
+// размер текста и точка входа. Его пишет запуск с --asm, и тогда образ можно запускать без --asm.
+public final class BufferMemory extends Memory {
+    private static final int CHUNK_BITS = 30;
+    private static final int IMAGE_MAGIC = 0x474D4952; // "RIMG"
+    private static final int IMAGE_HEADER_SIZE = 4096;
+
+    private final ByteBuffer[] chunks;
+    private ByteBuffer header; // только у mapped
+    private final int mask;
+    private final int chunkMask;
+    private final int chunkSize;
+
+    private BufferMemory(ByteBuffer[] chunks, int addrLen) {
+        this.chunks = chunks;
+        this.mask = addrLen == 32 ? -1 : (1 << addrLen) - 1;
+        this.chunkSize = chunks[0].capacity();
+        this.chunkMask = chunkSize - 1;
+    }
+
+    private static int chunkBits(int addrLen) {
+        if (addrLen < 1 || addrLen > 32) {
+            throw new IllegalArgumentException("Unsupported address length: " + addrLen);
+        }
+        return Math.min(addrLen, CHUNK_BITS);
+    }
+
+    public static BufferMemory direct(int addrLen) {
+        int chunkBits = chunkBits(addrLen);
+        ByteBuffer[] chunks = new ByteBuffer[1 << (addrLen - chunkBits)];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = ByteBuffer.allocateDirect(1 << chunkBits).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return new BufferMemory(chunks, addrLen);
+    }
+
+    // файл создаётся или дополняется нулями до заголовка и 2^addrLen байт; на большинстве ФС он остаётся разреженным
+    public static BufferMemory mapped(String fileName, int addrLen) throws IOException {
+        int chunkBits = chunkBits(addrLen);
+        ByteBuffer[] chunks = new ByteBuffer[1 << (addrLen - chunkBits)];
+        ByteBuffer header;
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            header = channel.map(FileChannel.MapMode.READ_WRITE, 0, IMAGE_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt(0) == IMAGE_MAGIC && header.getInt(4) != addrLen) {
+                throw new IOException("Memory image " + fileName + " was created with --addr-len " + header.getInt(4));
+            }
+            header.putInt(4, addrLen);
+            for (int i = 0; i < chunks.length; i++) {
+                chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE,
+                        IMAGE_HEADER_SIZE + ((long) i << chunkBits), 1L << chunkBits).order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+        BufferMemory memory = new BufferMemory(chunks, addrLen);
+        memory.header = header;
+        return memory;
+    }
+
+    // есть ли в образе программа, записанная setImageProgram
+    public boolean hasImageProgram() {
+        return header != null && header.getInt(0) == IMAGE_MAGIC;
+    }
+
+    public int imageTextSize() {
+        return header.getInt(8);
+    }
+
+    public int imageEntry() {
+        return header.getInt(12);
+    }
+
+    public void setImageProgram(int textSize, int entry) {
+        header.putInt(8, textSize);
+        header.putInt(12, entry);
+        header.putInt(0, IMAGE_MAGIC);
+    }
+
+    @Override
+    public long size() {
+        return (long) chunks.length * chunkSize;
+    }
+
+    @Override
+    void readPage(int page, byte[] bytes) {
+        int address = page << PAGE_BITS;
+        chunk(address).get(address & chunkMask, bytes, 0, pageBytes());
+    }
+
+    @Override
+    void writePage(int page, byte[] bytes) {
+        int address = page << PAGE_BITS;
+        chunk(address).put(address & chunkMask, bytes, 0, pageBytes());
+    }
+
+    private ByteBuffer chunk(int address) {
+        return chunks[(address & mask) >>> CHUNK_BITS];
+    }
+
+    @Override
+    public byte read(int address) {
+        return chunk(address).get(address & chunkMask);
+    }
+
+    @Override
+    public void write(int address, byte value) {
+        chunk(address).put(address & chunkMask, value);
+    }
+
+    @Override
+    public int readWord(int address) {
+        int offset = address & chunkMask;
+        if (offset <= chunkSize - 4) {
+            return chunk(address).getInt(offset);
+        }
+        // слово переходит в следующий буфер или через конец памяти
+        return (read(address) & 0xFF) | ((read(address + 1) & 0xFF) << 8)
+                | ((read(address + 2) & 0xFF) << 16) | ((read(address + 3) & 0xFF) << 24);
+    }
+
+    @Override
+    public short readHalf(int address) {
+        int offset = address & chunkMask;
+        if (offset <= chunkSize - 2) {
+            return chunk(address).getShort(offset);
+        }
+        return (short) ((read(address) & 0xFF) | ((read(address + 1) & 0xFF) << 8));
+    }
+
+    @Override
+    public void writeWord(int address, int value) {
+        int offset = address & chunkMask;
+        if (offset <= chunkSize - 4) {
+            chunk(address).putInt(offset, value);
+            return;
+        }
+        for (int i = 0; i < 4; i++) {
+            write(address + i, (byte) (value >> (8 * i)));
+        }
+    }
+
+    @Override
+    public void writeHalf(int address, short value) {
+        int offset = address & chunkMask;
+        if (offset <= chunkSize - 2) {
+            chunk(address).putShort(offset, value);
+            return;
+        }
+        write(address, (byte) value);
+        write(address + 1, (byte) (value >> 8));
+    }
+
+    @Override
+    public void flush() {
+        if (header != null) {
+            ((MappedByteBuffer) header).force();
+        }
+        for (ByteBuffer chunk : chunks) {
+            if (chunk instanceof MappedByteBuffer) {
+                ((MappedByteBuffer) chunk).force();
+            }
+        }
+    }
+}
@@ -1,440 +1,535 @@
-import java.util.List;
+import java.util.Arrays;
 import java.util.Map;
 
 public class CPU {
-    final int MEM_SIZE = 1 << 18;
-    static final int CACHE_INDEX_LEN = 3;
-    static final int CACHE_OFFSET_LEN = 6;
+    static final int TEXT_START = 0x10000;
+    // причина остановки runToEnd
+    static final int STOP_FINISHED = 0;
+    static final int STOP_INSTRUCTION_LIMIT = 1;
+    static final int STOP_TIMEOUT = 2;
+    static final int STOP_IDLE_LOOP = 3;
+    static final String[] STOP_NAMES = {"finished", "instruction limit", "timeout", "idle loop"};
+    // ограничения проверяются между порциями по столько команд, в самом цикле исполнения их нет
+    private static final long CHECK_INTERVAL = 1 << 16;
+    private final long MEM_SIZE;
+    private final int addrMask;
     private final Memory memory;
-    private final int[] registers = new int[32];
-    private final Map<String, Integer> registerMap;
-    private int PC;
-    private boolean ra = false;
+    private Memory dataPort; // через него идут загрузки, выборка и записи: memory или CachedMemory
+    private final CacheConfig config;
+    final int[] registers = new int[32];
+    final int raRegister;
+    int PC;
+    boolean ra = false;
+    private long[] decoded;
+    int textStart;
+    int textEnd;
+    boolean textModified = false;
+    private boolean threaded = false;
+    private String dataCache; // null, "lru" или "plru" - какой кэш хранит данные
+    private BlockInterpreter blockInterpreter;
+    long executed; // исполнено команд с начала программы
+    long stores; // исполнено записей в память, для поиска холостого цикла
+    private long maxInstructions = Long.MAX_VALUE;
+    private long timeoutNanos;
+    private boolean idleLoopDetection;
+    // состояние на последней опорной проверке холостого цикла
+    private final int[] idleRegisters = new int[32];
+    private int idlePC;
+    private long idleStores;
+    private long idleChecks;
+    private long idlePeriod;
+    LruCache lruCache;
+    BitPLruCache plruCache;
+    private TraceSink trace;
+    private boolean profiling;
+    private Profiler profiler; // null, если профилирование выключено: цикл исполнения платит одну проверку
+    private boolean missClassification;
+
+
+    public CPU(Memory memory, Map<String, Integer> registerMap, CacheConfig config) {
+        this.memory = memory;
+        this.config = config;
+        this.MEM_SIZE = config.memSize();
+        this.addrMask = (int) (MEM_SIZE - 1);
+        this.raRegister = registerMap.get("ra");
+    }
 
-    public static long lruInstrHits = 0;
-    public static long plruInstrHits = 0;
-    public static long lruDataHits = 0;
-    public static long plruDataHits = 0;
-    public static long totalInstrHits = 0;
-    public static long totalDataHits = 0;
+    public int executeProgram(int[] commands) {
+        return executeProgram(commands, commands.length);
+    }
 
-    static class Address {
-        int tag;
-        int index;
-        int offset;
+    // образ из Assembler: первые textSize слов - команды, остальное - секция данных
+    public int executeProgram(int[] image, int textSize) {
+        loadProgram(image, textSize);
+        return runToEnd();
+    }
 
-        public Address(int address) {
-            tag = address >>> (CACHE_OFFSET_LEN + CACHE_INDEX_LEN);
-            index = (address >>> CACHE_OFFSET_LEN) & ((1 << CACHE_INDEX_LEN) - 1);
-            offset = address & ((1 << CACHE_OFFSET_LEN) - 1);
-        }
+    public void loadProgram(int[] image, int textSize) {
+        memory.loadPrograms(TEXT_START, image);
+        startProgram(textSize, TEXT_START);
     }
 
-    public CPU(Memory memory, Map<String, Integer> registerMap) {
-        this.memory = memory;
-        this.registerMap = registerMap;
+    // программа уже лежит в памяти (образ --mem-image): запуск с entry, ra - признак конца, как у loadProgram
+    public void startProgram(int textSize, int entry) {
+        reset(textSize);
+        registers[raRegister] = TEXT_START + 4 * textSize;
+        PC = entry;
     }
 
-    public void executeProgram(List<Integer> commands) {
-        int startAddress = 0x10000;
-        memory.loadPrograms(startAddress, commands);
-        registers[registerMap.get("ra")] = startAddress + 4 * commands.size();
-        LruCache lruCache = new LruCache(memory);
-        BitPLruCache plruCache = new BitPLruCache(memory);
-        PC = startAddress;
+    // Программа уже лежит в памяти с TEXT_START (loadProgram или Snapshot):
+    // раскодировать её и начать с холодных кэшей
+    void reset(int textSize) {
+        textStart = TEXT_START;
+        textEnd = TEXT_START + 4 * textSize;
+        decoded = new long[textSize];
+        for (int i = 0; i < decoded.length; i++) {
+            decoded[i] = Decoder.decode(memory.readWord(textStart + 4 * i));
+        }
+        lruCache = new LruCache(memory, config, "lru".equals(dataCache));
+        plruCache = new BitPLruCache(memory, config, "plru".equals(dataCache));
+        if (missClassification) {
+            lruCache.classifyMisses();
+            plruCache.classifyMisses();
+        }
+        if (dataCache == null) {
+            dataPort = memory;
+        } else if (dataCache.equals("lru")) {
+            dataPort = new CachedMemory(memory, config, lruCache::residentLine);
+        } else {
+            dataPort = new CachedMemory(memory, config, plruCache::residentLine);
+        }
+        profiler = profiling ? new Profiler(textStart, textSize) : null;
+        blockInterpreter = null;
+        ra = false;
+        executed = 0;
+        stores = 0;
+    }
 
-        while (PC >= startAddress && PC < startAddress + 4 * commands.size()) {
-            int instruction = fetchInstruction(lruCache, plruCache);
-            executeInstruction(instruction, lruCache, plruCache);
-            if (ra) {
-                break;
+    // Исполняет не больше limit команд (в режиме блоков - до конца блока, на котором лимит исчерпан),
+    // следующий вызов продолжает с того же места. true, если программа завершилась.
+    public boolean run(long limit) {
+        if (finished()) {
+            return true;
+        }
+        if (threaded) {
+            if (blockInterpreter == null) {
+                blockInterpreter = new BlockInterpreter(this);
+            }
+            executed += blockInterpreter.run(limit);
+        } else {
+            long count = 0;
+            while (PC >= textStart && PC < textEnd && count < limit) {
+                long instruction = fetchInstruction(lruCache, plruCache);
+                executeInstruction(instruction, lruCache, plruCache);
+                count++;
+                if (ra) {
+                    break;
+                }
+                PC += 4;
             }
-            PC += 4;
+            executed += count;
         }
-        printCacheStatistics();
+        return finished();
     }
 
-    public int fetchInstruction(LruCache lruCache, BitPLruCache plruCache) {
-        Address address = new Address(PC);
+    // Ограничения для runToEnd: maxInstructions считается от начала программы, timeout - от вызова runToEnd,
+    // 0 - без ограничения. Холостой цикл - PC, регистры и память совпали с одной из прошлых проверок:
+    // дальше программа будет повторяться вечно. Срабатывают с точностью до CHECK_INTERVAL команд.
+    public void setLimits(long maxInstructions, long timeoutMillis, boolean idleLoopDetection) {
+        this.maxInstructions = maxInstructions > 0 ? maxInstructions : Long.MAX_VALUE;
+        this.timeoutNanos = timeoutMillis * 1_000_000;
+        this.idleLoopDetection = idleLoopDetection;
+    }
 
-        if (lruCache.accessLRU(address.tag, address.index)) {
-            lruInstrHits++;
+    // Исполняет программу до конца или до срабатывания ограничения, возвращает STOP_*
+    public int runToEnd() {
+        if (maxInstructions == Long.MAX_VALUE && timeoutNanos == 0 && !idleLoopDetection) {
+            run(Long.MAX_VALUE);
+            return STOP_FINISHED;
         }
-        if (plruCache.accessPLRU(address.tag, address.index)) {
-            plruInstrHits++;
+        long deadline = System.nanoTime() + timeoutNanos;
+        idleChecks = 0;
+        idlePeriod = 1;
+        saveIdleState();
+        while (true) {
+            long slice = Math.min(CHECK_INTERVAL, maxInstructions - executed);
+            if (slice <= 0) {
+                return STOP_INSTRUCTION_LIMIT;
+            }
+            if (run(slice)) {
+                return STOP_FINISHED;
+            }
+            if (timeoutNanos > 0 && System.nanoTime() - deadline >= 0) {
+                return STOP_TIMEOUT;
+            }
+            if (idleLoopDetection && idleLoop()) {
+                return STOP_IDLE_LOOP;
+            }
         }
-        totalInstrHits++;
+    }
 
-        if (PC + 3 >= MEM_SIZE) {
-            System.err.println("Instruction fetch out of bounds at address: " + PC);
-            return 0;
+    // Опорное состояние обновляется через 1, 2, 4, ... проверок (алгоритм Брента), поэтому цикл
+    // любой длины, а не только кратной CHECK_INTERVAL, рано или поздно совпадёт с опорой.
+    // Записей между проверками быть не должно: тогда и память та же.
+    private boolean idleLoop() {
+        if (PC == idlePC && stores == idleStores && Arrays.equals(registers, idleRegisters)) {
+            return true;
         }
+        if (++idleChecks == idlePeriod) {
+            saveIdleState();
+            idleChecks = 0;
+            idlePeriod *= 2;
+        }
+        return false;
+    }
 
-        return (memory.read(PC) & 0xFF) | ((memory.read(PC + 1) & 0xFF) << 8)
-                | ((memory.read(PC + 2) & 0xFF) << 16) | ((memory.read(PC + 3) & 0xFF) << 24);
+    private void saveIdleState() {
+        System.arraycopy(registers, 0, idleRegisters, 0, registers.length);
+        idlePC = PC;
+        idleStores = stores;
     }
 
-    public void executeInstruction(int instruction, LruCache lruCache, BitPLruCache plruCache) {
-        int funct7 = (instruction >> 25) & 0x7F;
-        int rs2 = (instruction >> 20) & 0x1F;
-        int rs1 = (instruction >> 15) & 0x1F;
-        int funct3 = (instruction >> 12) & 0x7;
-        int rd = (instruction >> 7) & 0x1F;
-        int opcode = instruction & 0x7F;
-        int imm;
+    boolean finished() {
+        return ra || PC < textStart || PC >= textEnd;
+    }
 
-        if (opcode == 0b0001111 && funct3 == 0b000) { // pause, fence, fence.tso
-            return;
-        }
+    Memory memory() {
+        return memory;
+    }
 
-        if (opcode == 0b1110011 && funct3 == 0b000) { // ecall, ebreak
-            return;
-        }
+    CacheConfig config() {
+        return config;
+    }
 
-        switch (opcode) {
-            case 0x33: // add, sub, xor, or, and, sll, srl, sra, slt, sltu, mul, mulh, mulhsu, mulhu, div, divu, rem, remu
-                executeRType(funct3, funct7, rs1, rs2, rd);
-                break;
-            case 0x13: // addi, xori, ori, andi, slli, srli, srai, slti, sltiu
-                imm = decodeImmI(instruction);
-                executeIType(funct3, funct7, rs1, imm, rd);
-                break;
-            case 0x3: // lb, lh, lw, lbu, lhu
-                imm = decodeImmI(instruction);
-                executeLoad(funct3, rs1, imm, rd, lruCache, plruCache);
-                break;
-            case 0x23: // sb, sh, sw
-                imm = decodeImmS(instruction);
-                executeSType(funct3, rs1, rs2, imm, lruCache, plruCache);
-                break;
-            case 0x63: // beq, bne, blt, bge, bltu, bgeu
-                imm = decodeImmB(instruction);
-                executeBType(funct3, rs1, rs2, imm);
-                break;
-            case 0x6F: // jal
-                imm = decodeImmJ(instruction);
-                executeJal(imm, rd);
-                break;
-            case 0x67: // jalr
-                imm = decodeImmI(instruction);
-                executeJalr(rs1, imm, rd);
-                break;
-            case 0x37: // lui
-                imm = decodeImmU(instruction);
-                executeLui(imm, rd);
-                break;
-            case 0x17: // auipc
-                imm = decodeImmU(instruction);
-                executeAuipc(imm, rd);
-                break;
-            default:
-                System.err.println("Incorrect opcode: " + opcode);
+    int textSize() {
+        return decoded.length;
+    }
+
+    // Исполнение блоками (BlockInterpreter) выигрывает у интерпретатора только на циклах (execute.loop в Benchmark);
+    // программу, которая проходит каждый блок один раз, оно исполняет с той же скоростью
+    public void setThreaded(boolean threaded) {
+        this.threaded = threaded;
+    }
+
+    // null - кэши моделируют только тэги; "lru" или "plru" - этот кэш хранит данные,
+    // и память программа видит через него. Действует со следующего loadProgram/reset.
+    public void setDataCache(String policy) {
+        if (policy != null && !policy.equals("lru") && !policy.equals("plru")) {
+            throw new IllegalArgumentException("Unknown data cache: " + policy);
         }
+        this.dataCache = policy;
+    }
+
+    String dataCache() {
+        return dataCache;
     }
 
-    private int decodeImmI(int instruction) {
-        return instruction >> 20;
+    // записать грязные линии в память, чтобы она отражала состояние программы
+    public void flushCaches() {
+        lruCache.flush();
+        plruCache.flush();
     }
 
-    private int decodeImmS(int instruction) {
-        int imm11_5 = (instruction >> 25) & 0x7F;
-        int imm4_0 = (instruction >> 7) & 0x1F;
-        return (imm11_5 << 5) | imm4_0;
+    // счётчики исполнений и промахов по командам, см. Profiler. Действует со следующего loadProgram/reset.
+    public void setProfiling(boolean profiling) {
+        this.profiling = profiling;
     }
 
-    private int decodeImmB(int instruction) {
-        int imm = ((instruction >> 31) & 0x1) << 12;
-        imm |= ((instruction >> 7) & 0x1) << 11;
-        imm |= ((instruction >> 25) & 0x3F) << 5;
-        imm |= ((instruction >> 8) & 0xF) << 1;
-        return (imm << 19) >> 19;
+    // compulsory/capacity/conflict промахи обоих кэшей, см. MissClassifier. Действует со следующего loadProgram/reset.
+    public void setMissClassification(boolean missClassification) {
+        this.missClassification = missClassification;
     }
 
-    private int decodeImmJ(int instruction) {
-        int imm = ((instruction >> 31) & 0x1) << 20;
-        imm |= (((instruction >> 12) & 0xFF) << 12);
-        imm |= (((instruction >> 20) & 0x1) << 11);
-        imm |= (((instruction >> 21) & 0x3FF) << 1);
-        imm = imm << 12;
-        return imm >> 12;
+    Profiler profiler() {
+        return profiler;
     }
 
-    private int decodeImmU(int instruction) {
-        return instruction >> 12;
+    public void setTrace(TraceSink trace) {
+        this.trace = trace;
     }
 
-    private void executeRType(int funct3, int funct7, int rs1, int rs2, int rd) {
-        if (rd == 0) {
+    // Запись в область кода сбрасывает раскодированные команды, которые она задела
+    private void invalidateDecoded(int addr, int length) {
+        if (addr + length <= textStart || addr >= textEnd) {
             return;
         }
-        if (funct7 == 0x00) {
-            switch (funct3) {
-                case 0:
-                    // add
-                    registers[rd] = registers[rs1] + registers[rs2];
-                    break;
-                case 1:
-                    // sll
-                    registers[rd] = registers[rs1] << registers[rs2];
-                    break;
-                case 2:
-                    // slt
-                    registers[rd] = (registers[rs1] < registers[rs2]) ? 1 : 0;
-                    break;
-                case 3:
-                    // sltu
-                    registers[rd] = ((int) (registers[rs1] & 0xFFFFFFFFL) < (int) (registers[rs2] & 0xFFFFFFFFL)) ? 1 : 0;
-                    break;
-                case 4:
-                    // xor
-                    registers[rd] = registers[rs1] ^ registers[rs2];
-                    break;
-                case 5:
-                    // srl
-                    registers[rd] = (int) (registers[rs1] & 0xFFFFFFFFL) >> (registers[rs2] & 0x1F);
-                    break;
-                case 6:
-                    // or
-                    registers[rd] = registers[rs1] | registers[rs2];
-                    break;
-                case 7:
-                    // and
-                    registers[rd] = registers[rs1] & registers[rs2];
-                    break;
-                default:
-                    System.err.println("Incorrect funct3: " + funct3);
-            }
-        } else if (funct7 == 0x20) {
-            if (funct3 == 0) {
-                // sub
-                registers[rd] = registers[rs1] - registers[rs2];
-            } else if (funct3 == 5) {
-                // sra
-                registers[rd] = registers[rs1] >> (registers[rs2] & 0x1F);
-            } else {
-                System.err.println("Incorrect funct3: " + funct3);
-            }
-        } else if (funct7 == 0x01) {
-            switch (funct3) {
-                case 0:
-                    // mul
-                    registers[rd] = registers[rs1] * registers[rs2];
-                    break;
-                case 1:
-                    // mulh
-                    registers[rd] = (int) (((long) registers[rs1] * (long) registers[rs2]) >> 32);
-                    break;
-                case 2:
-                    // mulhsu
-                    registers[rd] = (int) ((long) registers[rs1] * (Integer.toUnsignedLong(registers[rs2])) >> 32);
-                    break;
-                case 3:
-                    // mulhu
-                    registers[rd] = (int) ((registers[rs1] & 0xFFFFFFFFL) * (registers[rs2] & 0xFFFFFFFFL) >> 32);
-                    break;
-                case 4:
-                    // div
-                    registers[rd] = registers[rs1] / registers[rs2];
-                    break;
-                case 5:
-                    // divu
-                    registers[rd] = Integer.divideUnsigned(registers[rs1], registers[rs2]);
-                    break;
-                case 6:
-                    // rem
-                    registers[rd] = Math.floorMod(registers[rs1], registers[rs2]);
-                    break;
-                case 7:
-                    // remu
-                    registers[rd] = Integer.remainderUnsigned(registers[rs1], registers[rs2]);
-                    break;
-                default:
-                    System.err.println("Incorrect funct3: " + funct3);
-                    break;
-            }
-        } else {
-            System.err.println("Incorrect funct7: " + funct7);
+        int first = Math.max(addr, textStart) - textStart >> 2;
+        int last = Math.min(addr + length, textEnd) - 1 - textStart >> 2;
+        for (int i = first; i <= last; i++) {
+            decoded[i] = Decoder.OP_UNDECODED;
+        }
+        textModified = true;
+    }
+
+    public long fetchInstruction(LruCache lruCache, BitPLruCache plruCache) {
+        accessInstruction(PC, lruCache, plruCache);
+        return decodedAt(PC);
+    }
+
+    void accessInstruction(int pc, LruCache lruCache, BitPLruCache plruCache) {
+        if (trace != null) {
+            trace.record(TraceSink.FETCH, pc);
+        }
+        boolean lruHit = lruCache.access(pc, CacheStats.INSTRUCTION);
+        boolean plruHit = plruCache.access(pc, CacheStats.INSTRUCTION);
+        if (profiler != null) {
+            profiler.fetch(pc, lruHit, plruHit);
         }
     }
 
-    private void executeIType(int funct3, int funct7, int rs1, int imm, int rd) {
-        if (rd == 0) {
+    // count команд подряд с pc в одной линии, обращение к данным может быть только у последней.
+    // Тогда после первой выборки линия заведомо в обоих кэшах, и остальные - попадания без поиска по набору.
+    // С трассой, профилем или классификацией промахов каждая выборка идёт отдельно: им нужен каждый адрес
+    void accessInstructions(int pc, int count) {
+        if (trace != null || profiler != null || lruCache.classifier() != null) {
+            for (int i = 0; i < count; i++) {
+                accessInstruction(pc + 4 * i, lruCache, plruCache);
+            }
             return;
         }
-        switch (funct3) {
-            case 0:
-                // addi
-                registers[rd] = registers[rs1] + imm;
+        lruCache.access(pc, CacheStats.INSTRUCTION);
+        plruCache.access(pc, CacheStats.INSTRUCTION);
+        if (count > 1) {
+            lruCache.repeatHits(pc, CacheStats.INSTRUCTION, count - 1);
+            plruCache.repeatHits(CacheStats.INSTRUCTION, count - 1);
+        }
+    }
+
+    long decodedAt(int pc) {
+        int slot = (pc - textStart) >> 2;
+        long instruction = decoded[slot];
+        if (instruction == Decoder.OP_UNDECODED) {
+            instruction = Decoder.decode(readInstruction(pc));
+            decoded[slot] = instruction;
+        }
+        return instruction;
+    }
+
+    private int readInstruction(int pc) {
+        if (Integer.toUnsignedLong(pc) + 3 >= MEM_SIZE) {
+            System.err.println("Instruction fetch out of bounds at address: " + pc);
+            return 0;
+        }
+
+        return dataPort.readWord(pc);
+    }
+
+    public void executeInstruction(long instruction, LruCache lruCache, BitPLruCache plruCache) {
+        int rd = Decoder.rd(instruction);
+        int rs1 = Decoder.rs1(instruction);
+        int rs2 = Decoder.rs2(instruction);
+        int imm = Decoder.imm(instruction);
+
+        switch (Decoder.op(instruction)) {
+            case Decoder.OP_NOP:
+                break;
+            case Decoder.OP_ADD:
+                registers[rd] = registers[rs1] + registers[rs2];
+                break;
+            case Decoder.OP_SUB:
+                registers[rd] = registers[rs1] - registers[rs2];
+                break;
+            case Decoder.OP_SLL:
+                registers[rd] = registers[rs1] << registers[rs2];
                 break;
-            case 1:
-                // slli
-                registers[rd] = registers[rs1] << (imm & 0x1F);
+            case Decoder.OP_SLT:
+                registers[rd] = (registers[rs1] < registers[rs2]) ? 1 : 0;
+                break;
+            case Decoder.OP_SLTU:
+                registers[rd] = ((int) (registers[rs1] & 0xFFFFFFFFL) < (int) (registers[rs2] & 0xFFFFFFFFL)) ? 1 : 0;
+                break;
+            case Decoder.OP_XOR:
+                registers[rd] = registers[rs1] ^ registers[rs2];
+                break;
+            case Decoder.OP_SRL:
+                registers[rd] = (int) (registers[rs1] & 0xFFFFFFFFL) >> (registers[rs2] & 0x1F);
+                break;
+            case Decoder.OP_SRA:
+                registers[rd] = registers[rs1] >> (registers[rs2] & 0x1F);
                 break;
-            case 2:
-                // slti
+            case Decoder.OP_OR:
+                registers[rd] = registers[rs1] | registers[rs2];
+                break;
+            case Decoder.OP_AND:
+                registers[rd] = registers[rs1] & registers[rs2];
+                break;
+            case Decoder.OP_MUL:
+                registers[rd] = registers[rs1] * registers[rs2];
+                break;
+            case Decoder.OP_MULH:
+                registers[rd] = (int) (((long) registers[rs1] * (long) registers[rs2]) >> 32);
+                break;
+            case Decoder.OP_MULHSU:
+                registers[rd] = (int) ((long) registers[rs1] * (Integer.toUnsignedLong(registers[rs2])) >> 32);
+                break;
+            case Decoder.OP_MULHU:
+                registers[rd] = (int) ((registers[rs1] & 0xFFFFFFFFL) * (registers[rs2] & 0xFFFFFFFFL) >> 32);
+                break;
+            case Decoder.OP_DIV:
+                registers[rd] = registers[rs1] / registers[rs2];
+                break;
+            case Decoder.OP_DIVU:
+                registers[rd] = Integer.divideUnsigned(registers[rs1], registers[rs2]);
+                break;
+            case Decoder.OP_REM:
+                registers[rd] = Math.floorMod(registers[rs1], registers[rs2]);
+                break;
+            case Decoder.OP_REMU:
+                registers[rd] = Integer.remainderUnsigned(registers[rs1], registers[rs2]);
+                break;
+            case Decoder.OP_ADDI:
+                registers[rd] = registers[rs1] + imm;
+                break;
+            case Decoder.OP_SLTI:
                 registers[rd] = (registers[rs1] < imm) ? 1 : 0;
                 break;
-            case 3:
-                // sltiu
+            case Decoder.OP_SLTIU:
                 registers[rd] = ((int) (registers[rs1] & 0xFFFFFFFFL) < (int) (imm & 0xFFFFFFFFL)) ? 1 : 0;
                 break;
-            case 4:
-                // xori
+            case Decoder.OP_XORI:
                 registers[rd] = registers[rs1] ^ imm;
                 break;
-            case 5:
-                if (funct7 == 0) {
-                    // srli
-                    registers[rd] = (int) (registers[rs1] & 0xFFFFFFFFL) >> (imm & 0x1F);
-                } else {
-                    // srai
-                    registers[rd] = registers[rs1] >> (imm & 0x1F);
-                }
-                break;
-            case 6:
-                // ori
+            case Decoder.OP_ORI:
                 registers[rd] = registers[rs1] | imm;
                 break;
-            case 7:
-                // andi
+            case Decoder.OP_ANDI:
                 registers[rd] = registers[rs1] & imm;
                 break;
-            default:
-                System.err.println("Incorrect funct3: " + funct3);
+            case Decoder.OP_SLLI:
+                registers[rd] = registers[rs1] << imm;
                 break;
-        }
-    }
-
-    private void executeLoad(int funct3, int rs1, int imm, int rd, LruCache lruCache, BitPLruCache plruCache) {
-        int addr = Math.floorMod(registers[rs1] + imm, MEM_SIZE);
-        if (addr < 0 || addr + 3 >= MEM_SIZE) {
-            System.err.println("Out-of-memory address: " + addr);
-            return;
-        }
-        Address address = new Address(addr);
-
-        if (lruCache.accessLRU(address.tag, address.index)) {
-            lruDataHits++;
-        }
-        if (plruCache.accessPLRU(address.tag, address.index)) {
-            plruDataHits++;
-        }
-        totalDataHits++;
-
-        switch (funct3) {
-            case 0:
-                // lb
-                int byteValue = memory.read(addr) & 0xFF;
-                registers[rd] = (byteValue << 24) >> 24;
+            case Decoder.OP_SRLI:
+                registers[rd] = (int) (registers[rs1] & 0xFFFFFFFFL) >> imm;
                 break;
-            case 1:
-                // lh
-                int halfWord = ((memory.read(addr + 1) & 0xFF) << 8) |
-                        (memory.read(addr) & 0xFF);
-                registers[rd] = (halfWord << 16) >> 16;
+            case Decoder.OP_SRAI:
+                registers[rd] = registers[rs1] >> imm;
                 break;
-            case 2:
-                // lw
-                int word = ((memory.read(addr + 3) & 0xFF) << 24) |
-                        ((memory.read(addr + 2) & 0xFF) << 16) |
-                        ((memory.read(addr + 1) & 0xFF) << 8) |
-                        (memory.read(addr) & 0xFF);
-                registers[rd] = word;
+            case Decoder.OP_LB:
+            case Decoder.OP_LH:
+            case Decoder.OP_LW:
+            case Decoder.OP_LBU:
+            case Decoder.OP_LHU:
+            case Decoder.OP_LOAD_BAD:
+                executeLoad(Decoder.op(instruction), rs1, Decoder.funct3(instruction), imm, rd, lruCache, plruCache);
                 break;
-            case 4:
-                // lbu
-                registers[rd] = memory.read(addr) & 0xFF;
+            case Decoder.OP_SB:
+            case Decoder.OP_SH:
+            case Decoder.OP_SW:
+            case Decoder.OP_STORE_BAD:
+                executeSType(Decoder.op(instruction), rs1, rs2, imm, Decoder.funct3(instruction), lruCache, plruCache);
                 break;
-            case 5:
-                // lhu
-                registers[rd] = (memory.read(addr) & 0xFF) | ((memory.read(addr + 1) & 0xFF) << 8);
+            case Decoder.OP_BEQ:
+                branch(registers[rs1] == registers[rs2], imm);
                 break;
-            default:
-                System.err.println("Incorrect funct3: " + funct3);
-        }
-    }
-
-    private void executeBType(int funct3, int rs1, int rs2, int imm) {
-        boolean condition = false;
-        switch (funct3) {
-            case 0:
-                // beq
-                condition = (registers[rs1] == registers[rs2]);
+            case Decoder.OP_BNE:
+                branch(registers[rs1] != registers[rs2], imm);
                 break;
-            case 1:
-                // bne
-                condition = (registers[rs1] != registers[rs2]);
+            case Decoder.OP_BLT:
+                branch(registers[rs1] < registers[rs2], imm);
                 break;
-            case 4:
-                // blt
-                condition = (registers[rs1] < registers[rs2]);
+            case Decoder.OP_BGE:
+                branch(registers[rs1] >= registers[rs2], imm);
                 break;
-            case 5:
-                // bge
-                condition = (registers[rs1] >= registers[rs2]);
+            case Decoder.OP_BLTU:
+                branch((registers[rs1] & 0xFFFFFFFFL) < (registers[rs2] & 0xFFFFFFFFL), imm);
                 break;
-            case 6:
-                // bltu
-                condition = (registers[rs1] & 0xFFFFFFFFL) < (registers[rs2] & 0xFFFFFFFFL);
+            case Decoder.OP_BGEU:
+                branch((registers[rs1] & 0xFFFFFFFFL) >= (registers[rs2] & 0xFFFFFFFFL), imm);
                 break;
-            case 7:
-                // bgeu
-                condition = (registers[rs1] & 0xFFFFFFFFL) >= (registers[rs2] & 0xFFFFFFFFL);
+            case Decoder.OP_BRANCH_BAD:
+                System.err.println("Incorrect funct3: " + Decoder.funct3(instruction));
+                break;
+            case Decoder.OP_JAL:
+                executeJal(imm, rd);
+                break;
+            case Decoder.OP_JALR:
+                executeJalr(rs1, imm, rd);
+                break;
+            case Decoder.OP_LUI:
+                registers[rd] = imm;
+                break;
+            case Decoder.OP_AUIPC:
+                registers[rd] = PC + imm;
                 break;
             default:
-                System.err.println("Incorrect funct3: " + funct3);
+                System.err.println(Decoder.illegalMessage(imm));
         }
+    }
 
+    private void branch(boolean condition, int imm) {
         if (condition) {
             PC += imm - 4;
         }
     }
 
-    private void executeSType(int funct3, int rs1, int rs2, int imm, LruCache lruCache, BitPLruCache plruCache) {
-        int addr = Math.floorMod(registers[rs1] + imm, MEM_SIZE);
-        if (addr < 0 || addr + 3 >= MEM_SIZE) {
-            System.err.println("Out-of-memory address: " + addr);
+    // funct3 - Decoder.funct3, нужен только для сообщения об OP_LOAD_BAD; так же у executeSType
+    void executeLoad(int op, int rs1, int funct3, int imm, int rd, LruCache lruCache, BitPLruCache plruCache) {
+        int addr = (registers[rs1] + imm) & addrMask;
+        if (Integer.toUnsignedLong(addr) + 3 >= MEM_SIZE) {
+            System.err.println("Out-of-memory address: " + Integer.toUnsignedString(addr));
             return;
         }
-        Address address = new Address(addr);
-        int data = 0;
+        if (trace != null) {
+            trace.record(TraceSink.LOAD, addr);
+        }
+        boolean lruHit = lruCache.access(addr, CacheStats.DATA);
+        boolean plruHit = plruCache.access(addr, CacheStats.DATA);
+        if (profiler != null) {
+            profiler.data(lruHit, plruHit);
+        }
 
-        switch (funct3) {
-            case 0:
-                // sb
-                data = registers[rs2] & 0xFF;
+        switch (op) {
+            case Decoder.OP_LB:
+                registers[rd] = dataPort.read(addr);
+                break;
+            case Decoder.OP_LH:
+                registers[rd] = dataPort.readHalf(addr);
                 break;
-            case 1:
-                // sh
-                data = registers[rs2] & 0xFFFF;
+            case Decoder.OP_LW:
+                registers[rd] = dataPort.readWord(addr);
                 break;
-            case 2:
-                // sw
-                data = registers[rs2];
+            case Decoder.OP_LBU:
+                registers[rd] = dataPort.read(addr) & 0xFF;
+                break;
+            case Decoder.OP_LHU:
+                registers[rd] = dataPort.readHalf(addr) & 0xFFFF;
                 break;
             default:
                 System.err.println("Incorrect funct3: " + funct3);
         }
+    }
 
-        if (lruCache.writeLRU(address.tag, address.index, address.offset, data)) {
-            lruDataHits++;
+    void executeSType(int op, int rs1, int rs2, int imm, int funct3, LruCache lruCache, BitPLruCache plruCache) {
+        int addr = (registers[rs1] + imm) & addrMask;
+        if (Integer.toUnsignedLong(addr) + 3 >= MEM_SIZE) {
+            System.err.println("Out-of-memory address: " + Integer.toUnsignedString(addr));
+            return;
         }
-        if (plruCache.writePLRU(address.tag, address.index, data, address.offset)) {
-            plruDataHits++;
+        if (trace != null) {
+            trace.record(TraceSink.STORE, addr);
         }
-        totalDataHits++;
-    }
-
-    private void executeLui(int imm, int rd) {
-        if (rd != 0) {
-            registers[rd] = imm;
+        stores++;
+        // сначала линия загружается в кэш, затем байты пишутся через него
+        boolean lruHit = lruCache.write(addr);
+        boolean plruHit = plruCache.write(addr);
+        if (profiler != null) {
+            profiler.data(lruHit, plruHit);
         }
-    }
 
-    private void executeAuipc(int imm, int rd) {
-        if (rd != 0) {
-            registers[rd] = PC + imm;
+        switch (op) {
+            case Decoder.OP_SB:
+                dataPort.write(addr, (byte) registers[rs2]);
+                break;
+            case Decoder.OP_SH:
+                dataPort.writeHalf(addr, (short) registers[rs2]);
+                break;
+            case Decoder.OP_SW:
+                dataPort.writeWord(addr, registers[rs2]);
+                break;
+            default:
+                System.err.println("Incorrect funct3: " + funct3);
         }
+        invalidateDecoded(addr, op == Decoder.OP_SB ? 1 : op == Decoder.OP_SH ? 2 : 4);
     }
 
     private void executeJal(int imm, int rd) {
@@ -442,7 +537,7 @@ public class CPU {
             registers[rd] = PC + 4;
         }
         PC += imm - 4;
-        if (registers[rd] == registers[registerMap.get("ra")]) {
+        if (registers[rd] == registers[raRegister]) {
             ra = true;
         }
     }
@@ -452,34 +547,30 @@ public class CPU {
             registers[rd] = PC + 4;
         }
         PC = (registers[rs1] + imm) & ~1;
-        if (registers[rd] == registers[registerMap.get("ra")] || registers[rs1] == registers[registerMap.get("ra")]) {
+        if (registers[rd] == registers[raRegister] || registers[rs1] == registers[raRegister]) {
             ra = true;
         }
     }
 
 
-    private static void printCacheStatistics() {
-        long totalAccesses = totalInstrHits + totalDataHits;
-        long lruTotalHits = lruInstrHits + lruDataHits;
-        long plruTotalHits = plruInstrHits + plruDataHits;
-
-        System.out.printf("replacement\thit rate\thit rate (inst)\thit rate (data)%n");
-        if (totalDataHits == 0) {
-            System.out.printf("        LRU\t%3.5f%%\t%3.5f%%\tnan%%%n",
-                    100.0 * lruTotalHits / totalAccesses,
-                    100.0 * lruInstrHits / totalInstrHits);
-            System.out.printf("       pLRU\t%3.5f%%\t%3.5f%%\tnan%%%n",
-                    100.0 * plruTotalHits / totalAccesses,
-                    100.0 * plruInstrHits / totalInstrHits);
-        } else {
-            System.out.printf("        LRU\t%3.5f%%\t%3.5f%%\t%3.5f%%%n",
-                    100.0 * lruTotalHits / totalAccesses,
-                    100.0 * lruInstrHits / totalInstrHits,
-                    100.0 * lruDataHits / totalDataHits);
-            System.out.printf("       pLRU\t%3.5f%%\t%3.5f%%\t%3.5f%%%n",
-                    100.0 * plruTotalHits / totalAccesses,
-                    100.0 * plruInstrHits / totalInstrHits,
-                    100.0 * plruDataHits / totalDataHits);
+    // счёт статистики заново, например после прогрева
+    public void resetStatistics() {
+        lruCache.stats.reset();
+        plruCache.stats.reset();
+        if (profiler != null) {
+            profiler.reset();
         }
+        if (missClassification) {
+            lruCache.classifier().resetStatistics();
+            plruCache.classifier().resetStatistics();
+        }
+    }
+
+    public CacheStats[] cacheStatistics() {
+        return new CacheStats[]{lruCache.stats, plruCache.stats};
+    }
+
+    public void printCacheStatistics() {
+        CacheStats.printHitRates(System.out, cacheStatistics());
     }
 }
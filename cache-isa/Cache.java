@@ -0,0 +1,41 @@
+// Модель кэша. LruCache и BitPLruCache - кэши из условия (могут хранить данные), остальные
+// политики вытеснения - SetAssociativeCache, только тэги. CPU держит кэши из условия по их классам,
+// а TraceReplay специализирует цикл по классу, так что вызовы через интерфейс в горячем пути мономорфны.
+public interface Cache {
+    // чтение данных или выборка команды, kind - CacheStats.INSTRUCTION или DATA; true - попадание
+    boolean access(int address, int kind);
+
+    // запись с write-allocate: при промахе линия загружается и помечается грязной
+    boolean write(int address);
+
+    // есть ли линия в кэше; состояние политики и статистика не меняются
+    boolean contains(int address);
+
+    // убрать линию из кэша; true, если она была грязной
+    boolean invalidate(int address);
+
+    // поместить линию в кэш без обращения (например, вытесненную из L1); в hits/misses не входит
+    void fill(int address, boolean dirty);
+
+    // линия, вытесненная последним промахом или fill
+    boolean evicted();
+
+    boolean evictedDirty();
+
+    int evictedAddress();
+
+    CacheStats stats();
+
+    // lru, plru, tree-plru, srrip, brrip, fifo, random, opt (opt нужна будущая трасса, см. SetAssociativeCache).
+    // Кэши отсюда хранят только тэги и к memory не обращаются, так что она может быть null
+    static Cache create(String policy, Memory memory, CacheConfig config) {
+        switch (policy.toLowerCase()) {
+            case "lru":
+                return new LruCache(memory, config);
+            case "plru":
+                return new BitPLruCache(memory, config);
+            default:
+                return new SetAssociativeCache(config, SetAssociativeCache.policy(policy));
+        }
+    }
+}
@@ -0,0 +1,82 @@
+// Геометрия кэша и памяти. Разбиение адреса на tag/index/offset вычисляется отсюда;
+// если число наборов и размер линии - степени двойки, используются сдвиги и маски.
+public final class CacheConfig {
+    final int addrLen;     // ADDR_LEN, MEM_SIZE = 2^ADDR_LEN
+    final int sets;        // CACHE_SETS
+    final int ways;        // CACHE_WAY
+    final int lineSize;    // CACHE_LINE_SIZE, в байтах
+    final int lineCount;   // CACHE_LINE_COUNT = CACHE_SETS * CACHE_WAY
+    final int cacheSize;   // CACHE_SIZE = CACHE_LINE_SIZE * CACHE_LINE_COUNT
+    final int offsetLen;   // CACHE_OFFSET_LEN, только для степеней двойки
+    final int indexLen;    // CACHE_INDEX_LEN, только для степеней двойки
+    final int tagLen;      // CACHE_TAG_LEN, только для степеней двойки
+    private final boolean powerOfTwo;
+    private final int offsetMask;
+    private final int indexMask;
+
+    public CacheConfig(int addrLen, int sets, int ways, int lineSize) {
+        if (addrLen < 1 || addrLen > 32) {
+            throw new IllegalArgumentException("Unsupported address length: " + addrLen);
+        }
+        if (sets < 1 || ways < 1 || lineSize < 4 || lineSize % 4 != 0) {
+            throw new IllegalArgumentException("Incorrect cache geometry: " + sets + " sets, "
+                    + ways + " ways, " + lineSize + " byte lines");
+        }
+        this.addrLen = addrLen;
+        this.sets = sets;
+        this.ways = ways;
+        this.lineSize = lineSize;
+        this.lineCount = sets * ways;
+        this.cacheSize = lineSize * lineCount;
+        this.powerOfTwo = Integer.bitCount(sets) == 1 && Integer.bitCount(lineSize) == 1;
+        this.offsetLen = Integer.numberOfTrailingZeros(lineSize);
+        this.indexLen = Integer.numberOfTrailingZeros(sets);
+        this.tagLen = addrLen - indexLen - offsetLen;
+        this.offsetMask = lineSize - 1;
+        this.indexMask = sets - 1;
+    }
+
+    // ADDR_LEN = 18, CACHE_SETS = 8, CACHE_WAY = 4, CACHE_LINE_SIZE = 64 - по условию
+    public static CacheConfig defaults() {
+        return new CacheConfig(18, 8, 4, 64);
+    }
+
+    long memSize() {
+        return 1L << addrLen;
+    }
+
+    int tag(int address) {
+        if (powerOfTwo) {
+            return address >>> (offsetLen + indexLen);
+        }
+        return Integer.divideUnsigned(address, lineSize * sets);
+    }
+
+    int index(int address) {
+        if (powerOfTwo) {
+            return (address >>> offsetLen) & indexMask;
+        }
+        return Integer.remainderUnsigned(Integer.divideUnsigned(address, lineSize), sets);
+    }
+
+    int offset(int address) {
+        if (powerOfTwo) {
+            return address & offsetMask;
+        }
+        return Integer.remainderUnsigned(address, lineSize);
+    }
+
+    // адрес начала линии с этими тэгом и индексом
+    int lineAddress(int tag, int index) {
+        if (powerOfTwo) {
+            return (tag << (offsetLen + indexLen)) | (index << offsetLen);
+        }
+        return (tag * sets + index) * lineSize;
+    }
+
+    @Override
+    public String toString() {
+        return "ADDR_LEN=" + addrLen + " CACHE_SETS=" + sets + " CACHE_WAY=" + ways
+                + " CACHE_LINE_SIZE=" + lineSize + " CACHE_SIZE=" + cacheSize;
+    }
+}
@@ -0,0 +1,177 @@
+import java.io.PrintStream;
+import java.util.Locale;
+
+// Иерархия кэшей: раздельные L1I и L1D, общий L2, за ним память. Модель по тэгам, как кэши
+// по умолчанию: данные программа берёт из Memory. К CPU подключается как TraceSink.
+// INCLUSIVE - всё, что есть в L1, есть и в L2: вытеснение из L2 выбрасывает линию и из L1;
+// EXCLUSIVE - линия лежит либо в L1, либо в L2: L2 заполняется только вытесненными из L1 линиями;
+// NINE - без гарантий: L2 заполняется при промахах L1, грязные линии из L1 записываются в L2.
+public final class CacheHierarchy implements TraceSink {
+    static final int INCLUSIVE = 0;
+    static final int EXCLUSIVE = 1;
+    static final int NINE = 2;
+    private static final String[] INCLUSION_NAMES = {"inclusive", "exclusive", "nine"};
+
+    // Уровень иерархии: кэш любой политики из Cache.create и время попадания
+    static final class CacheLevel {
+        final String name;
+        final CacheConfig config;
+        final int latency; // тактов на попадание
+        final Cache cache;
+
+        CacheLevel(String name, CacheConfig config, String policy, int latency, Memory memory) {
+            this.name = name;
+            this.config = config;
+            this.latency = latency;
+            if (policy.equals("opt")) {
+                throw new IllegalArgumentException("OPT replacement needs a recorded trace, use --replay");
+            }
+            this.cache = Cache.create(policy, memory, config);
+            cache.stats().name = name + " (" + policy + ")";
+        }
+
+        CacheStats stats() {
+            return cache.stats();
+        }
+    }
+
+    final CacheLevel l1i;
+    final CacheLevel l1d;
+    final CacheLevel l2;
+    final int inclusion;
+    final int memoryLatency;
+    private long memoryAccesses; // промахи L2 - обращения к памяти
+
+    CacheHierarchy(CacheLevel l1i, CacheLevel l1d, CacheLevel l2, int inclusion, int memoryLatency) {
+        if (inclusion == INCLUSIVE && (l2.config.lineSize < l1i.config.lineSize || l2.config.lineSize < l1d.config.lineSize)) {
+            throw new IllegalArgumentException("Inclusive L2 needs lines at least as large as L1 lines");
+        }
+        if (inclusion == EXCLUSIVE && (l2.config.lineSize != l1i.config.lineSize || l2.config.lineSize != l1d.config.lineSize)) {
+            throw new IllegalArgumentException("Exclusive hierarchy needs the same line size on all levels");
+        }
+        this.l1i = l1i;
+        this.l1d = l1d;
+        this.l2 = l2;
+        this.inclusion = inclusion;
+        this.memoryLatency = memoryLatency;
+    }
+
+    static int inclusion(String name) {
+        for (int i = 0; i < INCLUSION_NAMES.length; i++) {
+            if (INCLUSION_NAMES[i].equals(name)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown inclusion mode: " + name);
+    }
+
+    // "sets,ways,lineSize[,policy]", например "64,8,64,plru"; policy по умолчанию lru
+    static CacheLevel parseLevel(String name, String spec, int addrLen, int latency, Memory memory) {
+        String[] parts = spec.split(",");
+        if (parts.length < 3 || parts.length > 4) {
+            throw new IllegalArgumentException("Expected sets,ways,lineSize[,policy] for " + name + ": " + spec);
+        }
+        CacheConfig config = new CacheConfig(addrLen, Integer.parseInt(parts[0]), Integer.parseInt(parts[1]),
+                Integer.parseInt(parts[2]));
+        return new CacheLevel(name, config, parts.length == 4 ? parts[3].toLowerCase() : "lru", latency, memory);
+    }
+
+    @Override
+    public void record(int kind, int address) {
+        if (kind == FETCH) {
+            access(l1i, address, CacheStats.INSTRUCTION, false);
+        } else {
+            access(l1d, address, CacheStats.DATA, kind == STORE);
+        }
+    }
+
+    private void access(CacheLevel l1, int address, int kind, boolean store) {
+        boolean hit = store ? l1.cache.write(address) : l1.cache.access(address, kind);
+        if (hit) {
+            return;
+        }
+        // сначала L1 освобождает место, затем линия приходит из L2 или памяти
+        boolean victim = l1.cache.evicted();
+        boolean victimDirty = l1.cache.evictedDirty();
+        int victimAddress = l1.cache.evictedAddress();
+
+        if (inclusion == EXCLUSIVE) {
+            if (l2.cache.contains(address)) {
+                l2.cache.access(address, kind);
+                // линия переезжает в L1 вместе с грязным битом
+                if (l2.cache.invalidate(address)) {
+                    l1.cache.fill(address, true);
+                }
+            } else {
+                // промах L2 без заполнения: в L2 попадают только вытесненные из L1 линии
+                l2.stats().misses[kind]++;
+                memoryAccesses++;
+            }
+            if (victim) {
+                l2.cache.fill(victimAddress, victimDirty);
+            }
+            return;
+        }
+
+        if (victim && victimDirty) {
+            l2.cache.fill(victimAddress, true);
+            evictFromL2();
+        }
+        if (!l2.cache.access(address, kind)) {
+            memoryAccesses++;
+            evictFromL2();
+        }
+    }
+
+    // в INCLUSIVE линия, вытесненная из L2, уходит и из обоих L1
+    private void evictFromL2() {
+        if (inclusion != INCLUSIVE || !l2.cache.evicted()) {
+            return;
+        }
+        int base = l2.cache.evictedAddress();
+        backInvalidate(l1i, base);
+        backInvalidate(l1d, base);
+    }
+
+    private void backInvalidate(CacheLevel l1, int base) {
+        for (int offset = 0; offset < l2.config.lineSize; offset += l1.config.lineSize) {
+            if (l1.cache.invalidate(base + offset)) {
+                // грязная линия L1 уходит в память вместе с линией L2
+                l1.stats().writeBacks[CacheStats.DATA]++;
+            }
+        }
+    }
+
+    long memoryAccesses() {
+        return memoryAccesses;
+    }
+
+    // AMAT = hit L1 + miss rate L1 * (hit L2 + miss rate L2 * latency памяти), в тактах на обращение
+    double averageAccessTime() {
+        long accesses = l1i.stats().accesses() + l1d.stats().accesses();
+        if (accesses == 0) {
+            return Double.NaN;
+        }
+        long cycles = l1i.stats().accesses() * l1i.latency + l1d.stats().accesses() * l1d.latency
+                + l2.stats().accesses() * l2.latency + memoryAccesses * memoryLatency;
+        return (double) cycles / accesses;
+    }
+
+    void resetStatistics() {
+        l1i.stats().reset();
+        l1d.stats().reset();
+        l2.stats().reset();
+        memoryAccesses = 0;
+    }
+
+    CacheStats[] statistics() {
+        return new CacheStats[]{l1i.stats(), l1d.stats(), l2.stats()};
+    }
+
+    void print(PrintStream out) {
+        out.printf("hierarchy: %s, L1I %s, L1D %s, L2 %s%n", INCLUSION_NAMES[inclusion], l1i.config, l1d.config, l2.config);
+        CacheStats.printHitRates(out, statistics());
+        out.printf(Locale.ROOT, "AMAT\t%.5f cycles (L1I %d, L1D %d, L2 %d, memory %d)%n", averageAccessTime(),
+                l1i.latency, l1d.latency, l2.latency, memoryLatency);
+    }
+}
@@ -0,0 +1,75 @@
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Locale;
+
+// Статистика одного кэша за одну симуляцию, отдельно для команд и для данных.
+// Счётчики - массивы по виду обращения, чтобы в горячем пути был один инкремент.
+public final class CacheStats {
+    static final int INSTRUCTION = 0;
+    static final int DATA = 1;
+    static final int NONE = -1; // заполнение линии без обращения программы, в статистику не входит
+
+    String name; // уровни CacheHierarchy подписывают свои кэши
+    final long[] hits = new long[2];
+    final long[] misses = new long[2];
+    final long[] coldMisses = new long[2];  // промах в ещё не заполненную (невалидную) линию
+    final long[] evictions = new long[2];   // промах, вытеснивший валидную линию
+    final long[] writeBacks = new long[2];  // вытесненная линия была грязной и записана в память
+
+    public CacheStats(String name) {
+        this.name = name;
+    }
+
+    void reset() {
+        for (long[] counters : new long[][]{hits, misses, coldMisses, evictions, writeBacks}) {
+            Arrays.fill(counters, 0);
+        }
+    }
+
+    long accesses(int kind) {
+        return hits[kind] + misses[kind];
+    }
+
+    long accesses() {
+        return accesses(INSTRUCTION) + accesses(DATA);
+    }
+
+    long hits() {
+        return hits[INSTRUCTION] + hits[DATA];
+    }
+
+    double hitRate(int kind) {
+        return accesses(kind) == 0 ? Double.NaN : 100.0 * hits[kind] / accesses(kind);
+    }
+
+    double hitRate() {
+        return accesses() == 0 ? Double.NaN : 100.0 * hits() / accesses();
+    }
+
+    // Таблица из условия лабораторной
+    static void printHitRates(PrintStream out, CacheStats... caches) {
+        out.printf("replacement\thit rate\thit rate (inst)\thit rate (data)%n");
+        for (CacheStats stats : caches) {
+            out.printf("%11s\t%s\t%s\t%s%n", stats.name, percent(stats.hitRate()),
+                    percent(stats.hitRate(INSTRUCTION)), percent(stats.hitRate(DATA)));
+        }
+    }
+
+    // без обращений данного вида - nan, как в условии
+    private static String percent(double rate) {
+        return Double.isNaN(rate) ? "nan%" : String.format("%3.5f%%", rate);
+    }
+
+    static void writeCsvHeader(PrintWriter out) {
+        out.println("cache,kind,accesses,hits,misses,cold_misses,evictions,write_backs,hit_rate");
+    }
+
+    void writeCsv(PrintWriter out) {
+        for (int kind = INSTRUCTION; kind <= DATA; kind++) {
+            out.printf(Locale.ROOT, "%s,%s,%d,%d,%d,%d,%d,%d,%.5f%n", name, kind == INSTRUCTION ? "inst" : "data",
+                    accesses(kind), hits[kind], misses[kind], coldMisses[kind], evictions[kind], writeBacks[kind],
+                    hitRate(kind));
+        }
+    }
+}
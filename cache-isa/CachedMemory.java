@@ -0,0 +1,85 @@
+// Память, которую CPU видит через кэш с данными: байты берутся из линии кэша, если она загружена,
+// иначе из основной памяти. Линия должна быть загружена заранее (access/write), сам порт
+// кэш не трогает. Доступ через границу линии собирается по байтам.
+final class CachedMemory extends Memory {
+    private final Memory backing;
+    private final CacheConfig config;
+    private final Lines lines;
+
+    // LruCache::residentLine или BitPLruCache::residentLine
+    interface Lines {
+        int[] resident(int address, boolean write);
+    }
+
+    CachedMemory(Memory backing, CacheConfig config, Lines lines) {
+        this.backing = backing;
+        this.config = config;
+        this.lines = lines;
+    }
+
+    @Override
+    public long size() {
+        return backing.size();
+    }
+
+    @Override
+    public byte read(int address) {
+        int[] line = lines.resident(address, false);
+        if (line == null) {
+            return backing.read(address);
+        }
+        int offset = config.offset(address);
+        return (byte) (line[offset >> 2] >> (8 * (offset & 3)));
+    }
+
+    @Override
+    public void write(int address, byte value) {
+        int[] line = lines.resident(address, true);
+        if (line == null) {
+            backing.write(address, value);
+            return;
+        }
+        int offset = config.offset(address);
+        int shift = 8 * (offset & 3);
+        line[offset >> 2] = line[offset >> 2] & ~(0xFF << shift) | (value & 0xFF) << shift;
+    }
+
+    @Override
+    public int readWord(int address) {
+        int offset = config.offset(address);
+        if ((offset & 3) == 0) {
+            int[] line = lines.resident(address, false);
+            return line == null ? backing.readWord(address) : line[offset >> 2];
+        }
+        return (read(address) & 0xFF) | ((read(address + 1) & 0xFF) << 8)
+                | ((read(address + 2) & 0xFF) << 16) | ((read(address + 3) & 0xFF) << 24);
+    }
+
+    @Override
+    public short readHalf(int address) {
+        return (short) ((read(address) & 0xFF) | ((read(address + 1) & 0xFF) << 8));
+    }
+
+    @Override
+    public void writeWord(int address, int value) {
+        int offset = config.offset(address);
+        if ((offset & 3) == 0) {
+            int[] line = lines.resident(address, true);
+            if (line == null) {
+                backing.writeWord(address, value);
+            } else {
+                line[offset >> 2] = value;
+            }
+            return;
+        }
+        for (int i = 0; i < 4; i++) {
+            write(address + i, (byte) (value >> (8 * i)));
+        }
+    }
+
+    @Override
+    public void writeHalf(int address, short value) {
+        write(address, (byte) value);
+        write(address + 1, (byte) (value >> 8));
+    }
+}
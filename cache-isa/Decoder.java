@@ -0,0 +1,343 @@
+// Раскодирование команды в компактную форму: op | rd | rs1 | rs2 | imm, упакованные в один long.
+// Значение 0 зарезервировано под "ещё не раскодировано".
+public final class Decoder {
+    static final int OP_UNDECODED = 0;
+    static final int OP_NOP = 1; // fence, fence.tso, pause, ecall, ebreak, запись в x0
+    static final int OP_ILLEGAL = 2;
+
+    static final int OP_ADD = 3;
+    static final int OP_SUB = 4;
+    static final int OP_SLL = 5;
+    static final int OP_SLT = 6;
+    static final int OP_SLTU = 7;
+    static final int OP_XOR = 8;
+    static final int OP_SRL = 9;
+    static final int OP_SRA = 10;
+    static final int OP_OR = 11;
+    static final int OP_AND = 12;
+    static final int OP_MUL = 13;
+    static final int OP_MULH = 14;
+    static final int OP_MULHSU = 15;
+    static final int OP_MULHU = 16;
+    static final int OP_DIV = 17;
+    static final int OP_DIVU = 18;
+    static final int OP_REM = 19;
+    static final int OP_REMU = 20;
+
+    static final int OP_ADDI = 21;
+    static final int OP_SLTI = 22;
+    static final int OP_SLTIU = 23;
+    static final int OP_XORI = 24;
+    static final int OP_ORI = 25;
+    static final int OP_ANDI = 26;
+    static final int OP_SLLI = 27;
+    static final int OP_SRLI = 28;
+    static final int OP_SRAI = 29;
+
+    static final int OP_LB = 30;
+    static final int OP_LH = 31;
+    static final int OP_LW = 32;
+    static final int OP_LBU = 33;
+    static final int OP_LHU = 34;
+    static final int OP_LOAD_BAD = 35; // funct3 в поле rs2
+
+    static final int OP_SB = 36;
+    static final int OP_SH = 37;
+    static final int OP_SW = 38;
+    static final int OP_STORE_BAD = 39; // funct3 в поле rd
+
+    static final int OP_BEQ = 40;
+    static final int OP_BNE = 41;
+    static final int OP_BLT = 42;
+    static final int OP_BGE = 43;
+    static final int OP_BLTU = 44;
+    static final int OP_BGEU = 45;
+    static final int OP_BRANCH_BAD = 46; // funct3 в поле rd
+
+    static final int OP_JAL = 47;
+    static final int OP_JALR = 48;
+    static final int OP_LUI = 49;
+    static final int OP_AUIPC = 50;
+
+    private Decoder() {
+    }
+
+    static int op(long decoded) {
+        return (int) (decoded & 0xFF);
+    }
+
+    static int rd(long decoded) {
+        return (int) (decoded >>> 8) & 0x1F;
+    }
+
+    static int rs1(long decoded) {
+        return (int) (decoded >>> 13) & 0x1F;
+    }
+
+    static int rs2(long decoded) {
+        return (int) (decoded >>> 18) & 0x1F;
+    }
+
+    static int imm(long decoded) {
+        return (int) (decoded >>> 32);
+    }
+
+    // funct3 команды с неверным funct3: у OP_LOAD_BAD он лежит в поле rs2, у OP_STORE_BAD и OP_BRANCH_BAD - в rd
+    // (у них это поле свободно). У остальных команд 0
+    static int funct3(long decoded) {
+        switch (op(decoded)) {
+            case OP_LOAD_BAD:
+                return rs2(decoded);
+            case OP_STORE_BAD:
+            case OP_BRANCH_BAD:
+                return rd(decoded);
+            default:
+                return 0;
+        }
+    }
+
+    static long pack(int op, int rd, int rs1, int rs2, int imm) {
+        return ((long) imm << 32) | ((long) rs2 << 18) | ((long) rs1 << 13) | ((long) rd << 8) | op;
+    }
+
+    public static long decode(int instruction) {
+        int funct7 = (instruction >> 25) & 0x7F;
+        int rs2 = (instruction >> 20) & 0x1F;
+        int rs1 = (instruction >> 15) & 0x1F;
+        int funct3 = (instruction >> 12) & 0x7;
+        int rd = (instruction >> 7) & 0x1F;
+        int opcode = instruction & 0x7F;
+
+        if (opcode == 0b0001111 && funct3 == 0b000) { // pause, fence, fence.tso
+            return pack(OP_NOP, 0, 0, 0, 0);
+        }
+
+        if (opcode == 0b1110011 && funct3 == 0b000) { // ecall, ebreak
+            return pack(OP_NOP, 0, 0, 0, 0);
+        }
+
+        switch (opcode) {
+            case 0x33:
+                return decodeRType(instruction, funct3, funct7, rs1, rs2, rd);
+            case 0x13:
+                return decodeIType(funct3, funct7, rs1, decodeImmI(instruction), rd);
+            case 0x3:
+                return decodeLoad(funct3, rs1, decodeImmI(instruction), rd);
+            case 0x23:
+                return decodeSType(funct3, rs1, rs2, decodeImmS(instruction));
+            case 0x63:
+                return decodeBType(funct3, rs1, rs2, decodeImmB(instruction));
+            case 0x6F:
+                return pack(OP_JAL, rd, 0, 0, decodeImmJ(instruction));
+            case 0x67:
+                return pack(OP_JALR, rd, rs1, 0, decodeImmI(instruction));
+            case 0x37:
+                return rd == 0 ? pack(OP_NOP, 0, 0, 0, 0) : pack(OP_LUI, rd, 0, 0, decodeImmU(instruction));
+            case 0x17:
+                return rd == 0 ? pack(OP_NOP, 0, 0, 0, 0) : pack(OP_AUIPC, rd, 0, 0, decodeImmU(instruction));
+            default:
+                return pack(OP_ILLEGAL, 0, 0, 0, instruction);
+        }
+    }
+
+    private static long decodeRType(int instruction, int funct3, int funct7, int rs1, int rs2, int rd) {
+        if (rd == 0) {
+            return pack(OP_NOP, 0, 0, 0, 0);
+        }
+        int op;
+        if (funct7 == 0x00) {
+            op = switch (funct3) {
+                case 0 -> OP_ADD;
+                case 1 -> OP_SLL;
+                case 2 -> OP_SLT;
+                case 3 -> OP_SLTU;
+                case 4 -> OP_XOR;
+                case 5 -> OP_SRL;
+                case 6 -> OP_OR;
+                default -> OP_AND;
+            };
+        } else if (funct7 == 0x20 && funct3 == 0) {
+            op = OP_SUB;
+        } else if (funct7 == 0x20 && funct3 == 5) {
+            op = OP_SRA;
+        } else if (funct7 == 0x01) {
+            op = switch (funct3) {
+                case 0 -> OP_MUL;
+                case 1 -> OP_MULH;
+                case 2 -> OP_MULHSU;
+                case 3 -> OP_MULHU;
+                case 4 -> OP_DIV;
+                case 5 -> OP_DIVU;
+                case 6 -> OP_REM;
+                default -> OP_REMU;
+            };
+        } else {
+            return pack(OP_ILLEGAL, 0, 0, 0, instruction);
+        }
+        return pack(op, rd, rs1, rs2, 0);
+    }
+
+    private static long decodeIType(int funct3, int funct7, int rs1, int imm, int rd) {
+        if (rd == 0) {
+            return pack(OP_NOP, 0, 0, 0, 0);
+        }
+        int op = switch (funct3) {
+            case 0 -> OP_ADDI;
+            case 1 -> OP_SLLI;
+            case 2 -> OP_SLTI;
+            case 3 -> OP_SLTIU;
+            case 4 -> OP_XORI;
+            case 5 -> funct7 == 0 ? OP_SRLI : OP_SRAI;
+            case 6 -> OP_ORI;
+            default -> OP_ANDI;
+        };
+        if (op == OP_SLLI || op == OP_SRLI || op == OP_SRAI) {
+            imm &= 0x1F;
+        }
+        return pack(op, rd, rs1, 0, imm);
+    }
+
+    private static long decodeLoad(int funct3, int rs1, int imm, int rd) {
+        switch (funct3) {
+            case 0:
+                return pack(OP_LB, rd, rs1, 0, imm);
+            case 1:
+                return pack(OP_LH, rd, rs1, 0, imm);
+            case 2:
+                return pack(OP_LW, rd, rs1, 0, imm);
+            case 4:
+                return pack(OP_LBU, rd, rs1, 0, imm);
+            case 5:
+                return pack(OP_LHU, rd, rs1, 0, imm);
+            default:
+                return pack(OP_LOAD_BAD, 0, rs1, funct3, imm);
+        }
+    }
+
+    private static long decodeSType(int funct3, int rs1, int rs2, int imm) {
+        switch (funct3) {
+            case 0:
+                return pack(OP_SB, 0, rs1, rs2, imm);
+            case 1:
+                return pack(OP_SH, 0, rs1, rs2, imm);
+            case 2:
+                return pack(OP_SW, 0, rs1, rs2, imm);
+            default:
+                return pack(OP_STORE_BAD, funct3, rs1, rs2, imm);
+        }
+    }
+
+    private static long decodeBType(int funct3, int rs1, int rs2, int imm) {
+        switch (funct3) {
+            case 0:
+                return pack(OP_BEQ, 0, rs1, rs2, imm);
+            case 1:
+                return pack(OP_BNE, 0, rs1, rs2, imm);
+            case 4:
+                return pack(OP_BLT, 0, rs1, rs2, imm);
+            case 5:
+                return pack(OP_BGE, 0, rs1, rs2, imm);
+            case 6:
+                return pack(OP_BLTU, 0, rs1, rs2, imm);
+            case 7:
+                return pack(OP_BGEU, 0, rs1, rs2, imm);
+            default:
+                return pack(OP_BRANCH_BAD, funct3, rs1, rs2, imm);
+        }
+    }
+
+    private static final String[] MNEMONICS = {
+            null, "nop", null,
+            "add", "sub", "sll", "slt", "sltu", "xor", "srl", "sra", "or", "and",
+            "mul", "mulh", "mulhsu", "mulhu", "div", "divu", "rem", "remu",
+            "addi", "slti", "sltiu", "xori", "ori", "andi", "slli", "srli", "srai",
+            "lb", "lh", "lw", "lbu", "lhu", null,
+            "sb", "sh", "sw", null,
+            "beq", "bne", "blt", "bge", "bltu", "bgeu", null,
+            "jal", "jalr", "lui", "auipc"
+    };
+
+    // Текст команды для отчётов; registerNames - имена регистров по номеру, pc нужен для адресов переходов.
+    // Команды, которые раскодированы в nop (fence, ecall, запись в x0), печатаются как nop.
+    static String disassemble(long decoded, int pc, String[] registerNames) {
+        int op = op(decoded);
+        String rd = registerNames[rd(decoded)];
+        String rs1 = registerNames[rs1(decoded)];
+        String rs2 = registerNames[rs2(decoded)];
+        int imm = imm(decoded);
+        if (op == OP_NOP) {
+            return "nop";
+        }
+        if (op == OP_ILLEGAL || op == OP_UNDECODED) {
+            return String.format(".word 0x%08x", imm);
+        }
+        if (op == OP_LOAD_BAD || op == OP_STORE_BAD || op == OP_BRANCH_BAD) {
+            return "<incorrect funct3>";
+        }
+        String name = MNEMONICS[op];
+        if (op <= OP_REMU) {
+            return name + " " + rd + ", " + rs1 + ", " + rs2;
+        }
+        if (op <= OP_SRAI) {
+            return name + " " + rd + ", " + rs1 + ", " + imm;
+        }
+        if (op <= OP_LHU || op == OP_JALR) {
+            return name + " " + rd + ", " + imm + "(" + rs1 + ")";
+        }
+        if (op <= OP_SW) {
+            return name + " " + rs2 + ", " + imm + "(" + rs1 + ")";
+        }
+        if (op <= OP_BGEU) {
+            return String.format("%s %s, %s, 0x%x", name, rs1, rs2, pc + imm);
+        }
+        if (op == OP_JAL) {
+            return String.format("%s %s, 0x%x", name, rd, pc + imm);
+        }
+        return name + " " + rd + ", " + imm;
+    }
+
+    // Сообщение, которое выводит исполнение некорректной команды
+    static String illegalMessage(int instruction) {
+        int opcode = instruction & 0x7F;
+        if (opcode == 0x33) {
+            int funct7 = (instruction >> 25) & 0x7F;
+            if (funct7 == 0x20) {
+                return "Incorrect funct3: " + ((instruction >> 12) & 0x7);
+            }
+            return "Incorrect funct7: " + funct7;
+        }
+        return "Incorrect opcode: " + opcode;
+    }
+
+    private static int decodeImmI(int instruction) {
+        return instruction >> 20;
+    }
+
+    // знак - из бита 31, как у остальных форматов: sw x5, -4(x2) пишет по x2 - 4
+    private static int decodeImmS(int instruction) {
+        int imm11_5 = instruction >> 25;
+        int imm4_0 = (instruction >> 7) & 0x1F;
+        return (imm11_5 << 5) | imm4_0;
+    }
+
+    private static int decodeImmB(int instruction) {
+        int imm = ((instruction >> 31) & 0x1) << 12;
+        imm |= ((instruction >> 7) & 0x1) << 11;
+        imm |= ((instruction >> 25) & 0x3F) << 5;
+        imm |= ((instruction >> 8) & 0xF) << 1;
+        return (imm << 19) >> 19;
+    }
+
+    private static int decodeImmJ(int instruction) {
+        int imm = ((instruction >> 31) & 0x1) << 20;
+        imm |= (((instruction >> 12) & 0xFF) << 12);
+        imm |= (((instruction >> 20) & 0x1) << 11);
+        imm |= (((instruction >> 21) & 0x3FF) << 1);
+        imm = imm << 12;
+        return imm >> 12;
+    }
+
+    private static int decodeImmU(int instruction) {
+        return instruction >> 12;
+    }
+}
@@ -0,0 +1,114 @@
+// Вся память одним byte[]
+public final class DenseMemory extends Memory {
+    private final byte[] memory;
+    private final int size;
+    private final int mask; // size - 1, если размер - степень двойки, иначе -1
+
+    public DenseMemory(int size) {
+        memory = new byte[size];
+        this.size = size;
+        this.mask = Integer.bitCount(size) == 1 ? size - 1 : -1;
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    void readPage(int page, byte[] bytes) {
+        int start = page << PAGE_BITS;
+        System.arraycopy(memory, start, bytes, 0, Math.min(PAGE_SIZE, size - start));
+    }
+
+    @Override
+    void writePage(int page, byte[] bytes) {
+        int start = page << PAGE_BITS;
+        System.arraycopy(bytes, 0, memory, start, Math.min(PAGE_SIZE, size - start));
+    }
+
+    private int wrap(int address) {
+        return mask >= 0 ? address & mask : address % size;
+    }
+
+    @Override
+    public byte read(int address) {
+        return memory[wrap(address)];
+    }
+
+    @Override
+    public void write(int address, byte value) {
+        memory[wrap(address)] = value;
+    }
+
+    @Override
+    public int readWord(int address) {
+        address = wrap(address);
+        if (address <= size - 4) {
+            return (int) WORD.get(memory, address);
+        }
+        // слово переходит через конец памяти
+        return (read(address) & 0xFF) | ((read(address + 1) & 0xFF) << 8)
+                | ((read(address + 2) & 0xFF) << 16) | ((read(address + 3) & 0xFF) << 24);
+    }
+
+    @Override
+    public short readHalf(int address) {
+        address = wrap(address);
+        if (address <= size - 2) {
+            return (short) HALF.get(memory, address);
+        }
+        return (short) ((read(address) & 0xFF) | ((read(address + 1) & 0xFF) << 8));
+    }
+
+    @Override
+    public void writeWord(int address, int value) {
+        address = wrap(address);
+        if (address <= size - 4) {
+            WORD.set(memory, address, value);
+            return;
+        }
+        for (int i = 0; i < 4; i++) {
+            write(address + i, (byte) (value >> (8 * i)));
+        }
+    }
+
+    @Override
+    public void writeHalf(int address, short value) {
+        address = wrap(address);
+        if (address <= size - 2) {
+            HALF.set(memory, address, value);
+            return;
+        }
+        write(address, (byte) value);
+        write(address + 1, (byte) (value >> 8));
+    }
+
+    @Override
+    public void readWords(int address, int[] words, int from, int count) {
+        address = wrap(address);
+        if (address <= size - 4 * count) {
+            for (int i = 0; i < count; i++) {
+                words[from + i] = (int) WORD.get(memory, address + 4 * i);
+            }
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            words[from + i] = readWord(address + 4 * i);
+        }
+    }
+
+    @Override
+    public void writeWords(int address, int[] words, int from, int count) {
+        address = wrap(address);
+        if (address <= size - 4 * count) {
+            for (int i = 0; i < count; i++) {
+                WORD.set(memory, address + 4 * i, words[from + i]);
+            }
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            writeWord(address + 4 * i, words[from + i]);
+        }
+    }
+}
@@ -1,129 +1,335 @@
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
 
-public class LruCache {
-    private static final int CACHE_SETS = 8;
-    private static final int CACHE_WAY = 4;
-    private static final int CACHE_LINE_SIZE = 64;
-    private static final int CACHE_INDEX_LEN = 3;
-    private static final int CACHE_OFFSET_LEN = 6;
+// Кэш с вытеснением LRU. По умолчанию моделирует только тэги: данные лежат в Memory.
+// С carriesData линии хранят данные: промах заполняет линию из памяти, грязная линия
+// при вытеснении записывается обратно по своему адресу (write-back, write-allocate).
+public class LruCache implements Cache {
     private final Memory memory;
+    private final CacheConfig config;
+    private final int ways;
+    private final boolean carriesData;
+    final CacheStats stats = new CacheStats("LRU");
+    private MissClassifier classifier; // null, если промахи не классифицируются
     private final List<List<CacheLine>> sets;
-    private final List<LinkedList<Integer>> accessOrder;
+    // момент последнего обращения к каждой линии, [index * CACHE_WAY + way]; вытесняется линия с минимальным
+    private final long[] lastAccess;
+    private long clock;
+    // линия, вытесненная последним промахом или fill
+    private boolean evicted;
+    private boolean evictedDirty;
+    private int evictedAddress;
 
     private static class CacheLine {
         boolean valid = false;
         boolean dirty = false;
         int tag;
-        int[] data = new int[CACHE_LINE_SIZE];
+        int[] data; // слова линии, только если кэш хранит данные
+
+        CacheLine(int words) {
+            data = words > 0 ? new int[words] : null;
+        }
     }
 
-    public LruCache(Memory memory) {
+    public LruCache(Memory memory, CacheConfig config) {
+        this(memory, config, false);
+    }
+
+    public LruCache(Memory memory, CacheConfig config, boolean carriesData) {
         this.memory = memory;
+        this.config = config;
+        this.ways = config.ways;
+        this.carriesData = carriesData;
         this.sets = initializeCacheSets();
-        this.accessOrder = initializeAccessOrder();
+        this.lastAccess = new long[config.sets * ways];
+        initializeAccessOrder();
     }
 
     private List<List<CacheLine>> initializeCacheSets() {
-        List<List<CacheLine>> cache = new ArrayList<>(CACHE_SETS);
-        for (int i = 0; i < CACHE_SETS; i++) {
-            List<CacheLine> set = new ArrayList<>(CACHE_WAY);
-            for (int j = 0; j < CACHE_WAY; j++) {
-                set.add(new CacheLine());
+        List<List<CacheLine>> cache = new ArrayList<>(config.sets);
+        for (int i = 0; i < config.sets; i++) {
+            List<CacheLine> set = new ArrayList<>(ways);
+            for (int j = 0; j < ways; j++) {
+                set.add(new CacheLine(carriesData ? config.lineSize / 4 : 0));
             }
             cache.add(set);
         }
         return cache;
     }
 
-    private List<LinkedList<Integer>> initializeAccessOrder() {
-        List<LinkedList<Integer>> order = new ArrayList<>(CACHE_SETS);
-        for (int i = 0; i < CACHE_SETS; i++) {
-            LinkedList<Integer> queue = new LinkedList<>();
-            for (int j = 0; j < CACHE_WAY; j++) {
-                queue.add(j);
+    // как и раньше, изначально первой вытесняется последняя линия набора
+    private void initializeAccessOrder() {
+        for (int i = 0; i < config.sets; i++) {
+            for (int j = 0; j < ways; j++) {
+                lastAccess[i * ways + j] = ways - 1 - j;
             }
-            order.add(queue);
         }
-        return order;
+        clock = ways;
     }
 
-    public boolean accessLRU(int tag, int index) {
+    @Override
+    public boolean access(int address, int kind) {
+        int tag = config.tag(address);
+        int index = config.index(address);
         List<CacheLine> set = sets.get(index);
-        LinkedList<Integer> order = accessOrder.get(index);
 
-        for (int i = 0; i < CACHE_WAY; i++) {
+        for (int i = 0; i < ways; i++) {
             CacheLine line = set.get(i);
             if (line.valid && line.tag == tag) {
-                updateAccessOrder(order, i);
+                updateAccessOrder(index, i);
+                stats.hits[kind]++;
+                if (classifier != null) {
+                    classifier.record(tag, index, kind, true);
+                }
                 return true;
             }
         }
 
-        return handleCacheMiss(set, order, tag);
+        handleCacheMiss(set, index, tag, kind);
+        return false;
+    }
+
+    // count обращений подряд к линии address сразу после access к ней: то же, что count раз access,
+    // но без поиска по набору. Линия - та, к которой обращались последней, с отметкой clock - 1
+    void repeatHits(int address, int kind, int count) {
+        int first = config.index(address) * ways;
+        for (int i = first; i < first + ways; i++) {
+            if (lastAccess[i] == clock - 1) {
+                lastAccess[i] = clock + count - 1;
+                break;
+            }
+        }
+        clock += count;
+        stats.hits[kind] += count;
     }
 
-    public boolean writeLRU(int tag, int index, int offset, int data) {
+    // запись: при промахе линия сначала загружается (write-allocate), затем помечается грязной;
+    // сами байты пишет CPU через CachedMemory или напрямую в Memory
+    @Override
+    public boolean write(int address) {
+        int tag = config.tag(address);
+        int index = config.index(address);
         List<CacheLine> set = sets.get(index);
-        LinkedList<Integer> order = accessOrder.get(index);
 
-        for (int i = 0; i < CACHE_WAY; i++) {
+        for (int i = 0; i < ways; i++) {
             CacheLine line = set.get(i);
             if (line.valid && line.tag == tag) {
-                line.data[offset] = data;
                 line.dirty = true;
-                updateAccessOrder(order, i);
+                updateAccessOrder(index, i);
+                stats.hits[CacheStats.DATA]++;
+                if (classifier != null) {
+                    classifier.record(tag, index, CacheStats.DATA, true);
+                }
                 return true;
             }
         }
 
-        return handleWriteMiss(set, order, tag, offset, data);
+        handleCacheMiss(set, index, tag, CacheStats.DATA).dirty = true;
+        return false;
     }
 
+    // слова линии с этим адресом, если она в кэше и кэш хранит данные; иначе null.
+    // write помечает линию грязной: запись через границу линии задевает соседнюю
+    int[] residentLine(int address, boolean write) {
+        int tag = config.tag(address);
+        List<CacheLine> set = sets.get(config.index(address));
+        for (int i = 0; i < ways; i++) {
+            CacheLine line = set.get(i);
+            if (line.valid && line.tag == tag) {
+                line.dirty |= write;
+                return line.data;
+            }
+        }
+        return null;
+    }
 
-    private boolean handleCacheMiss(List<CacheLine> set, LinkedList<Integer> order, int tag) {
-        int displacedWay = order.removeLast();
-        CacheLine displacedLine = set.get(displacedWay);
+    @Override
+    public boolean contains(int address) {
+        return find(config.index(address), config.tag(address)) >= 0;
+    }
 
-        displacedLine.tag = tag;
-        displacedLine.dirty = false;
-        displacedLine.valid = true;
+    @Override
+    public boolean invalidate(int address) {
+        int index = config.index(address);
+        int way = find(index, config.tag(address));
+        if (way < 0) {
+            return false;
+        }
+        CacheLine line = sets.get(index).get(way);
+        boolean dirty = line.dirty;
+        line.valid = false;
+        line.dirty = false;
+        lastAccess[index * ways + way] = -1; // вытесняется первой
+        return dirty;
+    }
 
-        order.addFirst(displacedWay);
-        return false;
+    @Override
+    public void fill(int address, boolean dirty) {
+        int tag = config.tag(address);
+        int index = config.index(address);
+        int way = find(index, tag);
+        CacheLine line;
+        if (way >= 0) {
+            line = sets.get(index).get(way);
+            updateAccessOrder(index, way);
+            evicted = false;
+            if (classifier != null) {
+                classifier.record(tag, index, CacheStats.NONE, true);
+            }
+        } else {
+            line = handleCacheMiss(sets.get(index), index, tag, CacheStats.NONE);
+        }
+        line.dirty |= dirty;
+    }
+
+    private int find(int index, int tag) {
+        List<CacheLine> set = sets.get(index);
+        for (int i = 0; i < ways; i++) {
+            CacheLine line = set.get(i);
+            if (line.valid && line.tag == tag) {
+                return i;
+            }
+        }
+        return -1;
     }
 
-    private boolean handleWriteMiss(List<CacheLine> set, LinkedList<Integer> order,
-                                    int tag, int offset, int data) {
-        int displacedWay = order.removeLast();
+    private CacheLine handleCacheMiss(List<CacheLine> set, int index, int tag, int kind) {
+        int displacedWay = leastRecentlyUsed(index);
         CacheLine line = set.get(displacedWay);
+        if (kind != CacheStats.NONE) {
+            countMiss(line, kind);
+        }
+        if (classifier != null) {
+            classifier.record(tag, index, kind, false);
+        }
 
+        evicted = line.valid;
+        evictedDirty = line.dirty;
+        if (line.valid) {
+            evictedAddress = config.lineAddress(line.tag, index);
+        }
         if (line.valid && line.dirty) {
-            writeBackToMemory(line);
+            writeBackToMemory(line, index);
         }
 
         line.tag = tag;
+        line.dirty = false;
         line.valid = true;
-        line.dirty = true;
-        line.data[offset] = data;
+        if (carriesData) {
+            memory.readWords(config.lineAddress(tag, index), line.data, 0, line.data.length);
+        }
 
-        order.addFirst(displacedWay);
-        return false;
+        updateAccessOrder(index, displacedWay);
+        return line;
     }
 
-    private void updateAccessOrder(LinkedList<Integer> order, int way) {
-        order.remove(Integer.valueOf(way));
-        order.addFirst(way);
+    // записать все грязные линии в память, например в конце симуляции; в статистику не входит
+    void flush() {
+        for (int index = 0; index < config.sets; index++) {
+            for (CacheLine line : sets.get(index)) {
+                if (line.valid && line.dirty && carriesData) {
+                    memory.writeWords(config.lineAddress(line.tag, index), line.data, 0, line.data.length);
+                }
+                line.dirty = false;
+            }
+        }
+    }
+
+    // классификация промахов и гистограммы по наборам, см. MissClassifier
+    void classifyMisses() {
+        classifier = new MissClassifier(config);
+    }
+
+    MissClassifier classifier() {
+        return classifier;
+    }
+
+    @Override
+    public boolean evicted() {
+        return evicted;
+    }
+
+    @Override
+    public boolean evictedDirty() {
+        return evictedDirty;
+    }
+
+    @Override
+    public int evictedAddress() {
+        return evictedAddress;
+    }
+
+    @Override
+    public CacheStats stats() {
+        return stats;
+    }
+
+    private void countMiss(CacheLine displaced, int kind) {
+        stats.misses[kind]++;
+        if (displaced.valid) {
+            stats.evictions[kind]++;
+        } else {
+            stats.coldMisses[kind]++;
+        }
     }
 
-    private void writeBackToMemory(CacheLine line) {
-        int address = line.tag << (CACHE_INDEX_LEN + CACHE_OFFSET_LEN);
-        for (int i = 0; i < CACHE_LINE_SIZE; i++) {
-            memory.write(address + 4 * i, (byte) (line.data[i] & 0xFF));
-            memory.write(address + 4 * i + 1, (byte) ((line.data[i] >> 8) & 0xFF));
-            memory.write(address + 4 * i + 2, (byte) ((line.data[i] >> 16) & 0xFF));
-            memory.write(address + 4 * i + 3, (byte) ((line.data[i] >> 24) & 0xFF));
+    private int leastRecentlyUsed(int index) {
+        int base = index * ways;
+        int way = 0;
+        for (int i = 1; i < ways; i++) {
+            if (lastAccess[base + i] < lastAccess[base + way]) {
+                way = i;
+            }
+        }
+        return way;
+    }
+
+    private void updateAccessOrder(int index, int way) {
+        lastAccess[index * ways + way] = clock++;
+    }
+
+    private void writeBackToMemory(CacheLine line, int index) {
+        stats.writeBacks[CacheStats.DATA]++;
+        if (carriesData) {
+            memory.writeWords(config.lineAddress(line.tag, index), line.data, 0, line.data.length);
+        }
+    }
+
+    // Состояние для Snapshot: valid, dirty, tag и данные каждой линии, затем метки обращений и часы
+    static int stateSize(CacheConfig config, boolean carriesData) {
+        return config.lineCount * (2 + 4 + (carriesData ? config.lineSize : 0)) + 8 * config.lineCount + 8;
+    }
+
+    void saveState(ByteBuffer out) {
+        for (List<CacheLine> set : sets) {
+            for (CacheLine line : set) {
+                out.put((byte) (line.valid ? 1 : 0)).put((byte) (line.dirty ? 1 : 0)).putInt(line.tag);
+                if (carriesData) {
+                    out.asIntBuffer().put(line.data);
+                    out.position(out.position() + 4 * line.data.length);
+                }
+            }
+        }
+        out.asLongBuffer().put(lastAccess);
+        out.position(out.position() + 8 * lastAccess.length);
+        out.putLong(clock);
+    }
+
+    void restoreState(ByteBuffer in) {
+        for (List<CacheLine> set : sets) {
+            for (CacheLine line : set) {
+                line.valid = in.get() != 0;
+                line.dirty = in.get() != 0;
+                line.tag = in.getInt();
+                if (carriesData) {
+                    in.asIntBuffer().get(line.data);
+                    in.position(in.position() + 4 * line.data.length);
+                }
+            }
         }
+        in.asLongBuffer().get(lastAccess);
+        in.position(in.position() + 8 * lastAccess.length);
+        clock = in.getLong();
     }
 }
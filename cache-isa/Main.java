@@ -1,114 +1,254 @@
 import java.io.*;
-import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
-import java.util.function.IntPredicate;
 
 public class Main {
-    static final int MEM_SIZE = 1 << 18; // ADDR_LEN = log2(MEM_SIZE)
-    final int ADDR_LEN = 18; //по условию
-    final int CACHE_WAY = 32 / 8; // CACHE_WAY = CACHE_LINE_COUNT / CACHE_SETS; (ассоциативность - кол-во блоков)
-    final int CACHE_TAG_LEN = 18 - 3 - 6; // ADDR_LEN = CACHE_INDEX_LEN + CACHE_OFFSET_LEN + CACHE_TAG_LEN;
-    final int CACHE_INDEX_LEN = 3; //по условию (длина индекса - для поиска нужной кэш-линии в блоке)
-    final int CACHE_OFFSET_LEN = 6; // CACHE_OFFSET_SIZE = log2(CACHE_LINE_SIZE); (смещение - для поиска байта внутри кэш-линии)
-    final int CACHE_SIZE = 64 * 32 * 8; // CACHE_SIZE = CACHE_LINE_SIZE * CACHE_LINE_COUNT
-    final int CACHE_LINE_SIZE = 64 * 8; //по условию
-    final int CACHE_LINE_COUNT = 32; //по условию (всего кэш-линий)
-    final int CACHE_SETS = 8; // CACHE_SETS = 2^CACHE_INDEX_LEN (кэш-линий в одном блоке)
-    private static final Map<String, Integer> registerMap = new HashMap<>();
-    private static final Map<String, Integer> instructionsMap = new HashMap<>();
+    private static final String USAGE = "Usage: --asm <input_file> --bin <output_file> [--threaded] [--stats <file.csv>] "
+            + "[--trace <file>] [--addr-len N] [--sets N] [--ways N] [--line-size N] [--cache-size N] "
+            + "[--mem-backend heap|direct|mapped] [--mem-image <file>] [--warmup N] [--snapshot-out <file>] "
+            + "[--snapshot-in <file>] [--data-cache lru|plru] [--l1i S,W,L[,policy]] [--l1d S,W,L[,policy]] "
+            + "[--l2 S,W,L[,policy]] [--inclusion inclusive|exclusive|nine] [--latency L1,L2,MEM] "
+            + "[--max-instructions N] [--timeout ms] [--detect-idle] [--profile N] [--profile-by executions|misses]"
+            + " [--miss-classes <file.csv>]";
+    static final Map<String, Integer> registerMap = new HashMap<>();
+    static final String[] abiNames = {
+            "zero", "ra", "sp", "gp", "tp", "t0", "t1", "t2",
+            "s0", "s1", "a0", "a1", "a2", "a3", "a4", "a5",
+            "a6", "a7", "s2", "s3", "s4", "s5", "s6", "s7",
+            "s8", "s9", "s10", "s11", "t3", "t4", "t5", "t6"
+    };
 
     static {
         // Инициализация регистров
-        String[] abiNames = {
-                "zero", "ra", "sp", "gp", "tp", "t0", "t1", "t2",
-                "s0", "s1", "a0", "a1", "a2", "a3", "a4", "a5",
-                "a6", "a7", "s2", "s3", "s4", "s5", "s6", "s7",
-                "s8", "s9", "s10", "s11", "t3", "t4", "t5", "t6"
-        };
         for (int i = 0; i < abiNames.length; i++) {
             registerMap.put(abiNames[i], i);
         }
-
-        String[] instructions = {
-                "addi", "add", "slli", "srli", "srai", "sub", "sll", "slt",
-                "sltu", "xor", "srl", "sra", "or", "and", "mul", "mulh",
-                "mulhsu", "mulhu", "div", "divu", "rem", "remu", "jalr", "andi",
-                "ori", "xori", "slti", "sltiu", "lb", "lh", "lw", "lbu", "lhu",
-                "beq", "bne", "bge", "blt", "bltu", "bgeu", "jal", "auipc", "lui",
-                "sb", "sh", "sw", "fence", "fence.tso", "pause", "ecall", "ebreak"
-        };
-
-        for (String instruction : instructions) {
-            instructionsMap.put(instruction, 0);
-        }
     }
 
 
-    public static void main(String[] args) throws IOException {
+    public static void main(String[] args) throws IOException, InterruptedException {
         if (args.length < 2) {
-            System.err.println("No expected arguments. Usage: --asm <input_file> --bin <output_file>");
+            System.err.println("No expected arguments. " + USAGE);
             System.exit(1);
         }
 
+        if (Arrays.asList(args).contains("--sweep") || Arrays.asList(args).contains("--replay")) {
+            Sweep.main(args);
+            return;
+        }
+        if (Arrays.asList(args).contains("--batch")) {
+            BatchAssembler.main(args);
+            return;
+        }
+
         String inputFileName = null;
         String outputFileName = null;
+        String statsFileName = null;
+        String traceFileName = null;
+        String missClassesFileName = null;
+        String memoryBackend = "heap";
+        String memoryImage = null;
+        String snapshotIn = null;
+        String snapshotOut = null;
+        String dataCache = null;
+        String l1iSpec = null;
+        String l1dSpec = null;
+        String l2Spec = null;
+        String inclusion = "inclusive";
+        boolean hierarchy = false;
+        int[] latency = {1, 10, 100};
+        long warmup = 0;
+        long maxInstructions = 0;
+        long timeout = 0;
+        boolean detectIdle = false;
+        int profileTop = 0;
+        boolean profileByMisses = false;
+        boolean threaded = false;
+        CacheConfig defaults = CacheConfig.defaults();
+        int addrLen = defaults.addrLen;
+        int sets = defaults.sets;
+        int ways = defaults.ways;
+        int lineSize = defaults.lineSize;
+        int cacheSize = 0;
 
         for (int i = 0; i < args.length; i++) {
             if (args[i].equals("--asm")) {
                 inputFileName = args[++i];
             } else if (args[i].equals("--bin")) {
                 outputFileName = args[++i];
+            } else if (args[i].equals("--trace")) {
+                traceFileName = args[++i];
+            } else if (args[i].equals("--stats")) {
+                statsFileName = args[++i];
+            } else if (args[i].equals("--threaded")) {
+                threaded = true;
+            } else if (args[i].equals("--addr-len")) {
+                addrLen = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--sets")) {
+                sets = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--ways")) {
+                ways = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--line-size")) {
+                lineSize = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--cache-size")) {
+                cacheSize = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--mem-backend")) {
+                memoryBackend = args[++i];
+            } else if (args[i].equals("--mem-image")) {
+                // образ памяти всегда отображается из файла
+                memoryImage = args[++i];
+                memoryBackend = "mapped";
+            } else if (args[i].equals("--warmup")) {
+                warmup = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--snapshot-out")) {
+                snapshotOut = args[++i];
+            } else if (args[i].equals("--snapshot-in")) {
+                snapshotIn = args[++i];
+            } else if (args[i].equals("--data-cache")) {
+                dataCache = args[++i];
+            } else if (args[i].equals("--l1i")) {
+                l1iSpec = args[++i];
+                hierarchy = true;
+            } else if (args[i].equals("--l1d")) {
+                l1dSpec = args[++i];
+                hierarchy = true;
+            } else if (args[i].equals("--l2")) {
+                l2Spec = args[++i];
+                hierarchy = true;
+            } else if (args[i].equals("--inclusion")) {
+                inclusion = args[++i].toLowerCase();
+                hierarchy = true;
+            } else if (args[i].equals("--max-instructions")) {
+                maxInstructions = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--timeout")) {
+                timeout = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--detect-idle")) {
+                detectIdle = true;
+            } else if (args[i].equals("--profile")) {
+                profileTop = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--profile-by")) {
+                profileByMisses = args[++i].equals("misses");
+            } else if (args[i].equals("--miss-classes")) {
+                missClassesFileName = args[++i];
+            } else if (args[i].equals("--latency")) {
+                latency = Arrays.stream(args[++i].split(",")).mapToInt(Integer::parseInt).toArray();
             }
         }
 
-        if (inputFileName == null) {
-            System.err.println("Expected input file name. Usage: --asm <input_file> --bin <output_file>");
+        if (inputFileName == null && snapshotIn == null && memoryImage == null) {
+            System.err.println("Expected input file name. " + USAGE);
             System.exit(1);
         }
 
-        Assembler parser = new Assembler(registerMap);
-        List<String> instructions = readFile(inputFileName);
-        parser.parse(instructions);
-        List<Integer> commands = parser.getCommands();
+        if (cacheSize != 0) {
+            // CACHE_SETS = CACHE_SIZE / (CACHE_LINE_SIZE * CACHE_WAY)
+            sets = cacheSize / (lineSize * ways);
+        }
+        CacheConfig config = new CacheConfig(addrLen, sets, ways, lineSize);
+        if (latency.length != 3) {
+            System.err.println("Expected --latency L1,L2,MEM. " + USAGE);
+            System.exit(1);
+        }
 
-        Memory RAM = new Memory(MEM_SIZE);
-        CPU processor = new CPU(RAM, registerMap);
-        processor.executeProgram(commands);
+        // со снимком или образом программа берётся из них, --asm нужен только для --bin
+        Assembler parser = null;
+        if (inputFileName != null) {
+            parser = new Assembler(registerMap);
+            parser.parse(AsmLexer.open(inputFileName));
+        }
 
-        if (outputFileName == null) {
-            System.err.println("Compiling asm code is not supported");
-            System.exit(0);
+        Memory RAM = Memory.open(memoryBackend, config.addrLen, memoryImage);
+        // иерархия L1I/L1D/L2 считается в дополнение к двум кэшам из условия; L1 по умолчанию - их геометрия
+        CacheHierarchy levels = null;
+        if (hierarchy) {
+            String l1Default = sets + "," + ways + "," + lineSize;
+            levels = new CacheHierarchy(
+                    CacheHierarchy.parseLevel("L1I", l1iSpec == null ? l1Default : l1iSpec, addrLen, latency[0], RAM),
+                    CacheHierarchy.parseLevel("L1D", l1dSpec == null ? l1Default : l1dSpec, addrLen, latency[0], RAM),
+                    CacheHierarchy.parseLevel("L2", l2Spec == null ? "64,8," + lineSize : l2Spec, addrLen, latency[1], RAM),
+                    CacheHierarchy.inclusion(inclusion), latency[2]);
+        }
+        CPU processor = new CPU(RAM, registerMap, config);
+        processor.setThreaded(threaded);
+        processor.setDataCache(dataCache);
+        processor.setLimits(maxInstructions, timeout, detectIdle);
+        processor.setProfiling(profileTop > 0);
+        processor.setMissClassification(missClassesFileName != null);
+        if (snapshotIn != null) {
+            Snapshot.restore(snapshotIn, processor);
+        } else if (parser != null) {
+            processor.loadProgram(parser.getCommands(), parser.textSize());
+            if (memoryImage != null) {
+                ((BufferMemory) RAM).setImageProgram(parser.textSize(), CPU.TEXT_START);
+            }
         } else {
-            parser.writeBinaryFile(outputFileName);
+            BufferMemory image = (BufferMemory) RAM;
+            if (!image.hasImageProgram()) {
+                System.err.println("Memory image " + memoryImage + " has no program, create it with --asm. " + USAGE);
+                System.exit(1);
+            }
+            processor.startProgram(image.imageTextSize(), image.imageEntry());
         }
-    }
-
-
-    public static List<String> readFile(String fileName) throws IOException {
-        MyScanner scanner = new MyScanner(fileName, StandardCharsets.UTF_8);
-        IntPredicate symbolIsLegal = (int c) -> Character.isLetter(c) ||
-                Character.isDigit(c) || c == '-' || c == ',' || c == '.';
-
-        List<String> lines = new ArrayList<>();
-        StringBuilder command = new StringBuilder();
-        command.append(scanner.nextToken(symbolIsLegal));
-
-        while (scanner.hasNext()) {
-            String ch = scanner.nextToken(symbolIsLegal);
-
-            if (instructionsMap.containsKey(ch)) {
-                lines.add(command.toString());
-                command = new StringBuilder(ch);
-            } else {
-                command.append(" ").append(ch);
+        try (TraceFile.Writer trace = traceFileName == null ? null : new TraceFile.Writer(traceFileName)) {
+            processor.setTrace(TraceSink.both(trace, levels));
+            // прогрев не входит в статистику; снимок делается сразу после него
+            if (warmup > 0) {
+                processor.run(warmup);
+                processor.resetStatistics();
+                if (levels != null) {
+                    levels.resetStatistics();
+                }
+            }
+            if (snapshotOut != null) {
+                Snapshot.save(snapshotOut, processor);
+            }
+            int stop = processor.runToEnd();
+            if (stop != CPU.STOP_FINISHED) {
+                System.err.println("Simulation stopped: " + CPU.STOP_NAMES[stop] + " after "
+                        + processor.executed + " instructions");
+            }
+        }
+        processor.flushCaches();
+        RAM.flush();
+        processor.printCacheStatistics();
+        if (levels != null) {
+            levels.print(System.out);
+        }
+        if (missClassesFileName != null) {
+            // итог по классам на экран, гистограммы по наборам - в CSV
+            MissClassifier[] classifiers = {processor.lruCache.classifier(), processor.plruCache.classifier()};
+            CacheStats[] caches = processor.cacheStatistics();
+            try (PrintWriter out = new PrintWriter(new FileWriter(missClassesFileName))) {
+                MissClassifier.writeCsvHeader(out);
+                for (int i = 0; i < classifiers.length; i++) {
+                    classifiers[i].print(System.out, caches[i].name);
+                    classifiers[i].writeCsv(out, caches[i].name);
+                }
+            }
+        }
+        if (profileTop > 0) {
+            processor.profiler().print(System.out, processor, profileTop, profileByMisses);
+        }
+        if (statsFileName != null) {
+            try (PrintWriter out = new PrintWriter(new FileWriter(statsFileName))) {
+                CacheStats.writeCsvHeader(out);
+                for (CacheStats stats : processor.cacheStatistics()) {
+                    stats.writeCsv(out);
+                }
+                if (levels != null) {
+                    for (CacheStats stats : levels.statistics()) {
+                        stats.writeCsv(out);
+                    }
+                }
             }
         }
 
-        lines.add(command.toString());
-        scanner.close();
-        return lines;
+        if (outputFileName == null || parser == null) {
+            System.err.println("Compiling asm code is not supported");
+            System.exit(0);
+        } else {
+            parser.writeBinaryFile(outputFileName);
+        }
     }
 }
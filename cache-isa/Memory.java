@@ -1,32 +1,104 @@
-import java.util.List;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
 
-public class Memory {
-    private final byte[] memory;
-    private final int size;
+// Память симулятора. Адреса сворачиваются по размеру памяти; слова и полуслова - little-endian,
+// выравнивание не требуется. В куче небольшие адресные пространства хранятся целиком (DenseMemory),
+// большие - постранично (SparseMemory); вне кучи - в ByteBuffer (BufferMemory).
+public abstract class Memory {
+    static final int DENSE_ADDR_LEN = 24;
+    static final int PAGE_BITS = 12;
+    static final int PAGE_SIZE = 1 << PAGE_BITS;
 
-    public Memory(int size) {
-        memory = new byte[size];
-        this.size = size;
+    // little-endian слова и полуслова поверх byte[] одной операцией
+    static final VarHandle WORD = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    static final VarHandle HALF = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.LITTLE_ENDIAN);
+
+    // память на 2^addrLen байт
+    public static Memory allocate(int addrLen) {
+        if (addrLen <= DENSE_ADDR_LEN) {
+            return new DenseMemory(1 << addrLen);
+        }
+        return new SparseMemory(addrLen);
     }
 
-    public byte read(int address) {
-        address = address % size;
-        return memory[address];
+    // backend: heap, direct или mapped; для mapped нужен файл-образ
+    public static Memory open(String backend, int addrLen, String imageFile) throws IOException {
+        switch (backend) {
+            case "heap":
+                return allocate(addrLen);
+            case "direct":
+                return BufferMemory.direct(addrLen);
+            case "mapped":
+                if (imageFile == null) {
+                    throw new IllegalArgumentException("Mapped memory needs an image file");
+                }
+                return BufferMemory.mapped(imageFile, addrLen);
+            default:
+                throw new IllegalArgumentException("Unknown memory backend: " + backend);
+        }
     }
 
-    public void write(int address, byte value) {
-        address = address % size;
-        memory[address] = value;
+    // размер в байтах
+    public abstract long size();
+
+    public abstract byte read(int address);
+
+    public abstract void write(int address, byte value);
+
+    public abstract int readWord(int address);
+
+    public abstract short readHalf(int address);
+
+    public abstract void writeWord(int address, int value);
+
+    public abstract void writeHalf(int address, short value);
+
+    // копирование линии кэша: count слов подряд начиная с address
+    public void readWords(int address, int[] words, int from, int count) {
+        for (int i = 0; i < count; i++) {
+            words[from + i] = readWord(address + 4 * i);
+        }
     }
 
-    public void loadPrograms(int startAddress, List<Integer> commands) {
-        int currentAddress = startAddress;
-        for (int cmd : commands) {
-            memory[currentAddress] = (byte) (cmd & 0xFF);
-            memory[currentAddress + 1] = (byte) ((cmd >> 8) & 0xFF);
-            memory[currentAddress + 2] = (byte) ((cmd >> 16) & 0xFF);
-            memory[currentAddress + 3] = (byte) ((cmd >> 24) & 0xFF);
-            currentAddress += 4;
+    public void writeWords(int address, int[] words, int from, int count) {
+        for (int i = 0; i < count; i++) {
+            writeWord(address + 4 * i, words[from + i]);
         }
     }
+
+    public void loadPrograms(int startAddress, int[] commands) {
+        writeWords(startAddress, commands, 0, commands.length);
+    }
+
+    // Постраничный доступ для снимков: страницы по PAGE_SIZE байт (последняя может быть короче)
+    int pageCount() {
+        return (int) ((size() + PAGE_SIZE - 1) >> PAGE_BITS);
+    }
+
+    int pageBytes() {
+        return (int) Math.min(PAGE_SIZE, size());
+    }
+
+    // false - страница заведомо нулевая и её можно пропустить
+    boolean isAllocated(int page) {
+        return true;
+    }
+
+    void readPage(int page, byte[] bytes) {
+        for (int i = 0; i < pageBytes(); i++) {
+            bytes[i] = read((page << PAGE_BITS) + i);
+        }
+    }
+
+    void writePage(int page, byte[] bytes) {
+        for (int i = 0; i < pageBytes(); i++) {
+            write((page << PAGE_BITS) + i, bytes[i]);
+        }
+    }
+
+    // сохранить содержимое во внешнее хранилище, если оно есть
+    public void flush() {
+    }
 }
@@ -0,0 +1,185 @@
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Locale;
+
+// Классификация промахов кэша (3C) и гистограммы по наборам. Рядом с кэшем живёт теневой полностью
+// ассоциативный LRU того же числа линий:
+//   compulsory - к линии раньше не обращались;
+//   capacity   - тень тоже промахнулась: линия не поместилась бы и в полностью ассоциативный кэш;
+//   conflict   - тень попала, промах из-за того, что набору не хватило путей.
+// Тень - двусвязный список по массивам плюс хэш-таблица "номер линии -> узел списка" с открытой адресацией,
+// поэтому обращение стоит амортизированно O(1) и без выделения памяти, пока таблица не растёт.
+// В таблице остаются все когда-либо виденные линии (узел NOT_RESIDENT, если тень линию вытеснила).
+// Состояние тени в Snapshot не входит: после восстановления она начинается пустой.
+final class MissClassifier {
+    static final int COMPULSORY = 0;
+    static final int CAPACITY = 1;
+    static final int CONFLICT = 2;
+    private static final String[] CLASS_NAMES = {"compulsory", "capacity", "conflict"};
+    private static final int EMPTY = -1;        // свободная ячейка таблицы
+    private static final int NOT_RESIDENT = -1; // линия была, но в тени её уже нет
+
+    private final CacheConfig config;
+    final long[][] misses = new long[3][2]; // [класс][вид обращения]
+    final long[] setAccesses;
+    final long[][] setMisses; // [класс][набор]
+
+    // тень: узлы списка от MRU (head) к LRU (tail)
+    private final int[] lineOf;
+    private final int[] prev;
+    private final int[] next;
+    private int head = -1;
+    private int tail = -1;
+    private int size;
+
+    // хэш-таблица: keys - номера линий, values - узел или NOT_RESIDENT
+    private int[] keys;
+    private int[] values;
+    private int used;
+
+    MissClassifier(CacheConfig config) {
+        this.config = config;
+        this.setAccesses = new long[config.sets];
+        this.setMisses = new long[3][config.sets];
+        this.lineOf = new int[config.lineCount];
+        this.prev = new int[config.lineCount];
+        this.next = new int[config.lineCount];
+        int capacity = Integer.highestOneBit(Math.max(16, 4 * config.lineCount - 1)) << 1;
+        this.keys = new int[capacity];
+        this.values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    // обращение к линии (tag, index); hit - результат настоящего кэша. kind CacheStats.NONE -
+    // заполнение без обращения программы: тень его видит, в гистограммы оно не входит
+    void record(int tag, int index, int kind, boolean hit) {
+        int line = tag * config.sets + index;
+        int slot = slot(line);
+        boolean seen = keys[slot] != EMPTY;
+        int node = seen ? values[slot] : NOT_RESIDENT;
+
+        if (kind != CacheStats.NONE) {
+            setAccesses[index]++;
+            if (!hit) {
+                int type = !seen ? COMPULSORY : node == NOT_RESIDENT ? CAPACITY : CONFLICT;
+                misses[type][kind]++;
+                setMisses[type][index]++;
+            }
+        }
+
+        if (node != NOT_RESIDENT) {
+            if (node != head) {
+                unlink(node);
+                pushFront(node);
+            }
+            return;
+        }
+        if (size < lineOf.length) {
+            node = size++;
+        } else {
+            node = tail;
+            unlink(node);
+            values[slot(lineOf[node])] = NOT_RESIDENT;
+        }
+        lineOf[node] = line;
+        pushFront(node);
+        if (!seen) {
+            keys[slot] = line;
+            used++;
+        }
+        values[slot] = node;
+        if (2 * used > keys.length) {
+            grow();
+        }
+    }
+
+    private void unlink(int node) {
+        if (prev[node] >= 0) {
+            next[prev[node]] = next[node];
+        } else {
+            head = next[node];
+        }
+        if (next[node] >= 0) {
+            prev[next[node]] = prev[node];
+        } else {
+            tail = prev[node];
+        }
+    }
+
+    private void pushFront(int node) {
+        prev[node] = -1;
+        next[node] = head;
+        if (head >= 0) {
+            prev[head] = node;
+        } else {
+            tail = node;
+        }
+        head = node;
+    }
+
+    // ячейка с этим ключом или свободная ячейка, где он должен быть
+    private int slot(int line) {
+        int mask = keys.length - 1;
+        int hash = line * 0x9E3779B9;
+        int slot = (hash ^ hash >>> 16) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != line) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        Arrays.fill(keys, EMPTY);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    // счётчики заново (например, после прогрева); тень и множество виденных линий остаются
+    void resetStatistics() {
+        for (long[] counters : misses) {
+            Arrays.fill(counters, 0);
+        }
+        for (long[] counters : setMisses) {
+            Arrays.fill(counters, 0);
+        }
+        Arrays.fill(setAccesses, 0);
+    }
+
+    void print(PrintStream out, String name) {
+        long total = 0;
+        for (long[] counters : misses) {
+            total += counters[CacheStats.INSTRUCTION] + counters[CacheStats.DATA];
+        }
+        out.printf("%s misses:", name);
+        for (int type = COMPULSORY; type <= CONFLICT; type++) {
+            long count = misses[type][CacheStats.INSTRUCTION] + misses[type][CacheStats.DATA];
+            out.printf(Locale.ROOT, " %s %d (%.2f%%)", CLASS_NAMES[type], count,
+                    total == 0 ? 0.0 : 100.0 * count / total);
+        }
+        out.println();
+    }
+
+    static void writeCsvHeader(PrintWriter out) {
+        out.println("cache,set,accesses,misses,compulsory,capacity,conflict,miss_rate");
+    }
+
+    // строка на набор - тепловая карта по наборам
+    void writeCsv(PrintWriter out, String name) {
+        for (int set = 0; set < config.sets; set++) {
+            long setTotal = setMisses[COMPULSORY][set] + setMisses[CAPACITY][set] + setMisses[CONFLICT][set];
+            out.printf(Locale.ROOT, "%s,%d,%d,%d,%d,%d,%d,%.5f%n", name, set, setAccesses[set], setTotal,
+                    setMisses[COMPULSORY][set], setMisses[CAPACITY][set], setMisses[CONFLICT][set],
+                    setAccesses[set] == 0 ? Double.NaN : 100.0 * setTotal / setAccesses[set]);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+
+// Профиль по командам: сколько раз исполнена команда и сколько промахов LRU и pLRU дали её выборка
+// и её обращение к данным. Счётчики - массивы по слоту команды (pc - textStart) / 4. Обращение к данным
+// относится к команде последней выборки: и интерпретатор, и BlockInterpreter выбирают команду перед исполнением.
+final class Profiler {
+    private final int textStart;
+    final long[] executions;
+    final long[] fetchMissesLru;
+    final long[] fetchMissesPlru;
+    final long[] dataMissesLru;
+    final long[] dataMissesPlru;
+    private int slot;
+
+    Profiler(int textStart, int textSize) {
+        this.textStart = textStart;
+        this.executions = new long[textSize];
+        this.fetchMissesLru = new long[textSize];
+        this.fetchMissesPlru = new long[textSize];
+        this.dataMissesLru = new long[textSize];
+        this.dataMissesPlru = new long[textSize];
+    }
+
+    void fetch(int pc, boolean lruHit, boolean plruHit) {
+        slot = (pc - textStart) >> 2;
+        executions[slot]++;
+        if (!lruHit) {
+            fetchMissesLru[slot]++;
+        }
+        if (!plruHit) {
+            fetchMissesPlru[slot]++;
+        }
+    }
+
+    void data(boolean lruHit, boolean plruHit) {
+        if (!lruHit) {
+            dataMissesLru[slot]++;
+        }
+        if (!plruHit) {
+            dataMissesPlru[slot]++;
+        }
+    }
+
+    void reset() {
+        Arrays.fill(executions, 0);
+        Arrays.fill(fetchMissesLru, 0);
+        Arrays.fill(fetchMissesPlru, 0);
+        Arrays.fill(dataMissesLru, 0);
+        Arrays.fill(dataMissesPlru, 0);
+    }
+
+    private long misses(int slot) {
+        return fetchMissesLru[slot] + fetchMissesPlru[slot] + dataMissesLru[slot] + dataMissesPlru[slot];
+    }
+
+    // top самых частых команд (byMisses - с наибольшим числом промахов обоих кэшей), текст команды берётся у cpu
+    void print(PrintStream out, CPU cpu, int top, boolean byMisses) {
+        long total = Arrays.stream(executions).sum();
+        Comparator<Integer> order = byMisses
+                ? Comparator.comparingLong((Integer i) -> misses(i)).thenComparingLong(i -> executions[i])
+                : Comparator.comparingLong((Integer i) -> executions[i]).thenComparingLong(this::misses);
+        Integer[] slots = new Integer[executions.length];
+        int count = 0;
+        for (int i = 0; i < executions.length; i++) {
+            if (executions[i] != 0) {
+                slots[count++] = i;
+            }
+        }
+        slots = Arrays.copyOf(slots, count);
+        Arrays.sort(slots, order.reversed().thenComparingInt(i -> i));
+
+        out.printf("hotspots by %s, %d instructions executed%n", byMisses ? "misses" : "executions", total);
+        out.printf("%-10s %12s %7s %10s %10s %10s %10s  %s%n", "pc", "executions", "%", "fetch LRU", "fetch pLRU",
+                "data LRU", "data pLRU", "instruction");
+        for (int k = 0; k < Math.min(top, count); k++) {
+            int i = slots[k];
+            int pc = textStart + 4 * i;
+            out.printf(Locale.ROOT, "0x%08x %12d %6.2f%% %10d %10d %10d %10d  %s%n", pc, executions[i],
+                    100.0 * executions[i] / total, fetchMissesLru[i], fetchMissesPlru[i], dataMissesLru[i],
+                    dataMissesPlru[i], Decoder.disassemble(cpu.decodedAt(pc), pc, Main.abiNames));
+        }
+    }
+}
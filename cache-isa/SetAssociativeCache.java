@@ -0,0 +1,284 @@
+import java.util.Random;
+
+// Кэш по тэгам с политиками вытеснения помимо LRU и bit-pLRU. Состояние линий - плоские массивы
+// [index * CACHE_WAY + way], политика выбирается switch по полю, а не виртуальным вызовом.
+// Во всех политиках сначала занимается невалидная линия.
+// TREE_PLRU - двоичное дерево из CACHE_WAY - 1 бит на набор, CACHE_WAY - степень двойки;
+// SRRIP/BRRIP - 2-битный RRPV: попадание обнуляет, вставка с 2 (BRRIP - с 3, кроме каждой 32-й),
+//               вытесняется линия с RRPV 3;
+// FIFO - вытесняется самая давно загруженная линия, попадания порядок не меняют;
+// RANDOM - случайная линия, генератор с фиксированным seed, чтобы прогоны повторялись;
+// OPT - Belady: вытесняется линия, к которой обратятся позже всех. Нужна будущая трасса (setFuture),
+//       обращения к кэшу должны идти ровно в её порядке; линия вставляется всегда, без обхода кэша.
+public final class SetAssociativeCache implements Cache {
+    static final int TREE_PLRU = 0;
+    static final int SRRIP = 1;
+    static final int BRRIP = 2;
+    static final int FIFO = 3;
+    static final int RANDOM = 4;
+    static final int OPT = 5;
+    private static final String[] POLICY_NAMES = {"tree-plru", "srrip", "brrip", "fifo", "random", "opt"};
+    private static final String[] STATS_NAMES = {"tree-pLRU", "SRRIP", "BRRIP", "FIFO", "random", "OPT"};
+    private static final int RRPV_MAX = 3;
+    private static final int BRRIP_PERIOD = 32;
+    static final int NEVER = Integer.MAX_VALUE; // в nextUse: к линии больше не обращаются
+
+    private final CacheConfig config;
+    private final int ways;
+    private final int policy;
+    final CacheStats stats;
+    private final boolean[] valid;
+    private final boolean[] dirty;
+    private final int[] tags;
+    private final int[] meta; // RRPV, номер загрузки (FIFO) или позиция следующего обращения (OPT)
+    private final byte[] tree; // биты TREE_PLRU, узлы 1..CACHE_WAY-1 набора
+    private final Random random = new Random(0);
+    private int insertions;
+    private int[] nextUse;
+    private int position;
+    private boolean evicted;
+    private boolean evictedDirty;
+    private int evictedAddress;
+
+    public SetAssociativeCache(CacheConfig config, int policy) {
+        if (policy == TREE_PLRU && Integer.bitCount(config.ways) != 1) {
+            throw new IllegalArgumentException("Tree-PLRU needs a power-of-two number of ways: " + config.ways);
+        }
+        this.config = config;
+        this.ways = config.ways;
+        this.policy = policy;
+        this.stats = new CacheStats(STATS_NAMES[policy]);
+        this.valid = new boolean[config.lineCount];
+        this.dirty = new boolean[config.lineCount];
+        this.tags = new int[config.lineCount];
+        this.meta = new int[config.lineCount];
+        this.tree = policy == TREE_PLRU ? new byte[config.lineCount] : null;
+    }
+
+    static int policy(String name) {
+        for (int i = 0; i < POLICY_NAMES.length; i++) {
+            if (POLICY_NAMES[i].equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown replacement policy: " + name);
+    }
+
+    // Для OPT: nextUse[i] - номер следующего обращения к линии i-го обращения или NEVER
+    void setFuture(int[] nextUse) {
+        this.nextUse = nextUse;
+        this.position = 0;
+    }
+
+    @Override
+    public boolean access(int address, int kind) {
+        return lookup(address, kind, false);
+    }
+
+    @Override
+    public boolean write(int address) {
+        return lookup(address, CacheStats.DATA, true);
+    }
+
+    private boolean lookup(int address, int kind, boolean store) {
+        int next = policy == OPT ? nextUse[position++] : 0;
+        int index = config.index(address);
+        int tag = config.tag(address);
+        int line = find(index, tag);
+        if (line >= 0) {
+            stats.hits[kind]++;
+            dirty[line] |= store;
+            touch(index, line, next);
+            return true;
+        }
+        line = replace(index, tag, kind, next);
+        dirty[line] = store;
+        return false;
+    }
+
+    @Override
+    public boolean contains(int address) {
+        return find(config.index(address), config.tag(address)) >= 0;
+    }
+
+    @Override
+    public boolean invalidate(int address) {
+        int line = find(config.index(address), config.tag(address));
+        if (line < 0) {
+            return false;
+        }
+        boolean wasDirty = dirty[line];
+        valid[line] = false;
+        dirty[line] = false;
+        return wasDirty;
+    }
+
+    @Override
+    public void fill(int address, boolean dirty) {
+        int index = config.index(address);
+        int tag = config.tag(address);
+        int line = find(index, tag);
+        if (line >= 0) {
+            evicted = false;
+            touch(index, line, NEVER);
+        } else {
+            line = replace(index, tag, CacheStats.NONE, NEVER);
+        }
+        this.dirty[line] |= dirty;
+    }
+
+    private int find(int index, int tag) {
+        int base = index * ways;
+        for (int line = base; line < base + ways; line++) {
+            if (valid[line] && tags[line] == tag) {
+                return line;
+            }
+        }
+        return -1;
+    }
+
+    private int replace(int index, int tag, int kind, int next) {
+        int line = index * ways + victim(index);
+        if (kind != CacheStats.NONE) {
+            stats.misses[kind]++;
+            if (valid[line]) {
+                stats.evictions[kind]++;
+            } else {
+                stats.coldMisses[kind]++;
+            }
+        }
+        evicted = valid[line];
+        evictedDirty = dirty[line];
+        if (valid[line]) {
+            evictedAddress = config.lineAddress(tags[line], index);
+            if (dirty[line]) {
+                stats.writeBacks[CacheStats.DATA]++;
+            }
+        }
+        valid[line] = true;
+        dirty[line] = false;
+        tags[line] = tag;
+        insert(index, line, next);
+        return line;
+    }
+
+    private int victim(int index) {
+        int base = index * ways;
+        for (int way = 0; way < ways; way++) {
+            if (!valid[base + way]) {
+                return way;
+            }
+        }
+        switch (policy) {
+            case TREE_PLRU: {
+                int node = 1;
+                int way = 0;
+                for (int half = ways >> 1; half > 0; half >>= 1) {
+                    int bit = tree[base + node];
+                    way |= bit * half;
+                    node = 2 * node + bit;
+                }
+                return way;
+            }
+            case SRRIP:
+            case BRRIP:
+                while (true) {
+                    for (int way = 0; way < ways; way++) {
+                        if (meta[base + way] >= RRPV_MAX) {
+                            return way;
+                        }
+                    }
+                    for (int way = 0; way < ways; way++) {
+                        meta[base + way]++;
+                    }
+                }
+            case FIFO: {
+                // номера загрузок растут, сравнение через разность переживает переполнение
+                int victim = 0;
+                for (int way = 1; way < ways; way++) {
+                    if (meta[base + way] - meta[base + victim] < 0) {
+                        victim = way;
+                    }
+                }
+                return victim;
+            }
+            case OPT: {
+                int victim = 0;
+                for (int way = 1; way < ways; way++) {
+                    if (meta[base + way] > meta[base + victim]) {
+                        victim = way;
+                    }
+                }
+                return victim;
+            }
+            default:
+                return random.nextInt(ways);
+        }
+    }
+
+    private void insert(int index, int line, int next) {
+        switch (policy) {
+            case TREE_PLRU:
+                touch(index, line, next);
+                break;
+            case SRRIP:
+                meta[line] = RRPV_MAX - 1;
+                break;
+            case BRRIP:
+                meta[line] = ++insertions % BRRIP_PERIOD == 0 ? RRPV_MAX - 1 : RRPV_MAX;
+                break;
+            case FIFO:
+                meta[line] = ++insertions;
+                break;
+            case OPT:
+                meta[line] = next;
+                break;
+            default:
+        }
+    }
+
+    private void touch(int index, int line, int next) {
+        switch (policy) {
+            case TREE_PLRU: {
+                // биты на пути к линии указывают в другую половину
+                int base = index * ways;
+                int way = line - base;
+                int node = 1;
+                for (int half = ways >> 1; half > 0; half >>= 1) {
+                    int bit = (way & half) != 0 ? 1 : 0;
+                    tree[base + node] = (byte) (1 - bit);
+                    node = 2 * node + bit;
+                }
+                break;
+            }
+            case SRRIP:
+            case BRRIP:
+                meta[line] = 0;
+                break;
+            case OPT:
+                meta[line] = next;
+                break;
+            default:
+        }
+    }
+
+    @Override
+    public boolean evicted() {
+        return evicted;
+    }
+
+    @Override
+    public boolean evictedDirty() {
+        return evictedDirty;
+    }
+
+    @Override
+    public int evictedAddress() {
+        return evictedAddress;
+    }
+
+    @Override
+    public CacheStats stats() {
+        return stats;
+    }
+}
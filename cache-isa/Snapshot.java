@@ -0,0 +1,173 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Снимок состояния симулятора: геометрия, регистры, PC, состояние обоих кэшей и ненулевые страницы памяти.
+// Программа лежит в памяти, так что снимок самодостаточен. Статистика кэшей не сохраняется:
+// после восстановления счёт идёт с нуля, как после прогрева.
+// Формат: заголовок, регистры, кэши, затем записи (номер страницы, байты страницы) до номера -1.
+public final class Snapshot {
+    static final int MAGIC = 0x52565353; // "RVSS"
+    static final int VERSION = 2;
+    private static final int HEADER_SIZE = 4 * 9; // magic, version, геометрия, кэш с данными, textSize, PC
+    private static final String[] DATA_CACHES = {null, "lru", "plru"};
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private Snapshot() {
+    }
+
+    public static void save(String fileName, CPU cpu) throws IOException {
+        CacheConfig config = cpu.config();
+        Memory memory = cpu.memory();
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer out = ByteBuffer.allocateDirect(Math.max(BUFFER_SIZE, HEADER_SIZE + stateSize(config, cpu.dataCache())));
+            out.putInt(MAGIC).putInt(VERSION)
+                    .putInt(config.addrLen).putInt(config.sets).putInt(config.ways).putInt(config.lineSize)
+                    .putInt(dataCacheId(cpu.dataCache()))
+                    .putInt(cpu.textSize()).putInt(cpu.PC)
+                    .put((byte) (cpu.ra ? 1 : 0)).putLong(cpu.executed);
+            for (int register : cpu.registers) {
+                out.putInt(register);
+            }
+            cpu.lruCache.saveState(out);
+            cpu.plruCache.saveState(out);
+
+            byte[] page = new byte[memory.pageBytes()];
+            for (int i = 0; i < memory.pageCount(); i++) {
+                if (!memory.isAllocated(i)) {
+                    continue;
+                }
+                memory.readPage(i, page);
+                if (isZero(page)) {
+                    continue;
+                }
+                if (out.remaining() < 4 + page.length) {
+                    flush(channel, out);
+                }
+                out.putInt(i).put(page);
+            }
+            if (out.remaining() < 4) {
+                flush(channel, out);
+            }
+            out.putInt(-1);
+            flush(channel, out);
+        }
+    }
+
+    // cpu должен быть создан с той же геометрией кэша, размером памяти и кэшем с данными
+    public static void restore(String fileName, CPU cpu) throws IOException {
+        CacheConfig config = cpu.config();
+        Memory memory = cpu.memory();
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            ByteBuffer in = ByteBuffer.allocateDirect(Math.max(BUFFER_SIZE, stateSize(config, cpu.dataCache())));
+            in.limit(0);
+            fill(channel, in, 8);
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+                throw new IOException("Not a snapshot file: " + fileName);
+            }
+            fill(channel, in, 4 * 7);
+            int addrLen = in.getInt();
+            int sets = in.getInt();
+            int ways = in.getInt();
+            int lineSize = in.getInt();
+            if (addrLen != config.addrLen || sets != config.sets || ways != config.ways || lineSize != config.lineSize) {
+                throw new IOException("Snapshot was taken with " + new CacheConfig(addrLen, sets, ways, lineSize)
+                        + ", not " + config);
+            }
+            if (in.getInt() != dataCacheId(cpu.dataCache())) {
+                throw new IOException("Snapshot was taken with a different --data-cache");
+            }
+            int textSize = in.getInt();
+            int pc = in.getInt();
+
+            // регистры и кэши разбираются после памяти: reset раскодирует программу из неё
+            ByteBuffer state = ByteBuffer.allocate(stateSize(config, cpu.dataCache()));
+            fill(channel, in, state.capacity());
+            int limit = in.limit();
+            in.limit(in.position() + state.capacity());
+            state.put(in).flip();
+            in.limit(limit);
+            restorePages(channel, in, memory);
+
+            cpu.reset(textSize);
+            cpu.PC = pc;
+            cpu.ra = state.get() != 0;
+            cpu.executed = state.getLong();
+            for (int i = 0; i < cpu.registers.length; i++) {
+                cpu.registers[i] = state.getInt();
+            }
+            cpu.lruCache.restoreState(state);
+            cpu.plruCache.restoreState(state);
+        }
+    }
+
+    // страницы, которых нет в снимке, должны стать нулевыми
+    private static void restorePages(FileChannel channel, ByteBuffer in, Memory memory) throws IOException {
+        byte[] page = new byte[memory.pageBytes()];
+        byte[] zero = new byte[page.length];
+        for (int i = 0; i < memory.pageCount(); i++) {
+            if (memory.isAllocated(i)) {
+                memory.readPage(i, page);
+                if (!isZero(page)) {
+                    memory.writePage(i, zero);
+                }
+            }
+        }
+        while (true) {
+            fill(channel, in, 4);
+            int number = in.getInt();
+            if (number < 0) {
+                return;
+            }
+            fill(channel, in, page.length);
+            in.get(page);
+            memory.writePage(number, page);
+        }
+    }
+
+    // ra, executed, регистры и оба кэша
+    private static int stateSize(CacheConfig config, String dataCache) {
+        return 1 + 8 + 4 * 32 + LruCache.stateSize(config, "lru".equals(dataCache))
+                + BitPLruCache.stateSize(config, "plru".equals(dataCache));
+    }
+
+    private static int dataCacheId(String dataCache) {
+        return Arrays.asList(DATA_CACHES).indexOf(dataCache);
+    }
+
+    private static boolean isZero(byte[] page) {
+        for (byte b : page) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer out) throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+
+    // дочитывает файл, пока в буфере не окажется хотя бы bytes байт
+    private static void fill(FileChannel channel, ByteBuffer in, int bytes) throws IOException {
+        if (in.remaining() >= bytes) {
+            return;
+        }
+        in.compact();
+        while (in.position() < bytes) {
+            if (channel.read(in) < 0) {
+                throw new EOFException("Truncated snapshot file");
+            }
+        }
+        in.flip();
+    }
+}
@@ -0,0 +1,151 @@
+// Разреженная память для больших адресных пространств: страницы по 4 КиБ в двухуровневой таблице
+// выделяются при первой записи. Невыделенные страницы читаются как одна общая нулевая страница,
+// так что расход памяти пропорционален числу записанных страниц.
+public final class SparseMemory extends Memory {
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final int TABLE_BITS = 10;
+    private static final int TABLE_MASK = (1 << TABLE_BITS) - 1;
+    private static final byte[] ZERO_PAGE = new byte[PAGE_SIZE];
+
+    private final int mask;
+    private final byte[][][] directory;
+    private int pages;
+
+    public SparseMemory(int addrLen) {
+        if (addrLen < PAGE_BITS + TABLE_BITS || addrLen > 32) {
+            throw new IllegalArgumentException("Unsupported address length for sparse memory: " + addrLen);
+        }
+        this.mask = addrLen == 32 ? -1 : (1 << addrLen) - 1;
+        this.directory = new byte[1 << (addrLen - PAGE_BITS - TABLE_BITS)][][];
+    }
+
+    // число выделенных страниц
+    int pages() {
+        return pages;
+    }
+
+    @Override
+    public long size() {
+        return (mask & 0xFFFFFFFFL) + 1;
+    }
+
+    @Override
+    boolean isAllocated(int page) {
+        return pageForRead(page << PAGE_BITS) != ZERO_PAGE;
+    }
+
+    @Override
+    void readPage(int page, byte[] bytes) {
+        System.arraycopy(pageForRead(page << PAGE_BITS), 0, bytes, 0, PAGE_SIZE);
+    }
+
+    @Override
+    void writePage(int page, byte[] bytes) {
+        System.arraycopy(bytes, 0, pageForWrite(page << PAGE_BITS), 0, PAGE_SIZE);
+    }
+
+    private byte[] pageForRead(int address) {
+        byte[][] table = directory[(address & mask) >>> (PAGE_BITS + TABLE_BITS)];
+        if (table == null) {
+            return ZERO_PAGE;
+        }
+        byte[] page = table[(address >>> PAGE_BITS) & TABLE_MASK];
+        return page == null ? ZERO_PAGE : page;
+    }
+
+    private byte[] pageForWrite(int address) {
+        int dir = (address & mask) >>> (PAGE_BITS + TABLE_BITS);
+        byte[][] table = directory[dir];
+        if (table == null) {
+            table = new byte[1 << TABLE_BITS][];
+            directory[dir] = table;
+        }
+        int slot = (address >>> PAGE_BITS) & TABLE_MASK;
+        byte[] page = table[slot];
+        if (page == null) {
+            page = new byte[PAGE_SIZE];
+            table[slot] = page;
+            pages++;
+        }
+        return page;
+    }
+
+    @Override
+    public byte read(int address) {
+        return pageForRead(address)[address & PAGE_MASK];
+    }
+
+    @Override
+    public void write(int address, byte value) {
+        pageForWrite(address)[address & PAGE_MASK] = value;
+    }
+
+    @Override
+    public int readWord(int address) {
+        int offset = address & PAGE_MASK;
+        if (offset <= PAGE_SIZE - 4) {
+            return (int) WORD.get(pageForRead(address), offset);
+        }
+        // слово переходит на следующую страницу
+        return (read(address) & 0xFF) | ((read(address + 1) & 0xFF) << 8)
+                | ((read(address + 2) & 0xFF) << 16) | ((read(address + 3) & 0xFF) << 24);
+    }
+
+    @Override
+    public short readHalf(int address) {
+        int offset = address & PAGE_MASK;
+        if (offset <= PAGE_SIZE - 2) {
+            return (short) HALF.get(pageForRead(address), offset);
+        }
+        return (short) ((read(address) & 0xFF) | ((read(address + 1) & 0xFF) << 8));
+    }
+
+    @Override
+    public void writeWord(int address, int value) {
+        int offset = address & PAGE_MASK;
+        if (offset <= PAGE_SIZE - 4) {
+            WORD.set(pageForWrite(address), offset, value);
+            return;
+        }
+        for (int i = 0; i < 4; i++) {
+            write(address + i, (byte) (value >> (8 * i)));
+        }
+    }
+
+    @Override
+    public void writeHalf(int address, short value) {
+        int offset = address & PAGE_MASK;
+        if (offset <= PAGE_SIZE - 2) {
+            HALF.set(pageForWrite(address), offset, value);
+            return;
+        }
+        write(address, (byte) value);
+        write(address + 1, (byte) (value >> 8));
+    }
+
+    @Override
+    public void readWords(int address, int[] words, int from, int count) {
+        int offset = address & PAGE_MASK;
+        if (offset > PAGE_SIZE - 4 * count) {
+            super.readWords(address, words, from, count);
+            return;
+        }
+        byte[] page = pageForRead(address);
+        for (int i = 0; i < count; i++) {
+            words[from + i] = (int) WORD.get(page, offset + 4 * i);
+        }
+    }
+
+    @Override
+    public void writeWords(int address, int[] words, int from, int count) {
+        int offset = address & PAGE_MASK;
+        if (offset > PAGE_SIZE - 4 * count) {
+            super.writeWords(address, words, from, count);
+            return;
+        }
+        byte[] page = pageForWrite(address);
+        for (int i = 0; i < count; i++) {
+            WORD.set(page, offset + 4 * i, words[from + i]);
+        }
+    }
+}
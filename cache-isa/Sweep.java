@@ -0,0 +1,286 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+// Перебор геометрий кэша: программа ассемблируется один раз, затем каждая конфигурация
+// симулируется в своём потоке со своими Memory, CPU и кэшами.
+// Вместо --asm можно передать --replay <trace>: тогда программа не исполняется,
+// а каждая модель кэша прогоняет записанную через Main --trace трассу.
+// Политики, кроме lru и plru, считаются прогоном трассы: при --asm она один раз пишется в память
+// во время исполнения и общая для всех геометрий. Больше 2 ГиБ трассы в памяти не помещается:
+// тогда её пишут в файл через Main --trace и перебирают с --replay.
+// Запуск: java Main --sweep --asm <file> [--sets 4,8,16] [--ways 1,2,4,8] [--line-size 32,64]
+//         [--addr-len 18] [--policies lru,plru,tree-plru,srrip,brrip,fifo,random,opt] [--threads N] [--threaded]
+//         [--max-instructions N] [--timeout ms] [--detect-idle] [--out <file.csv|file.json>]
+public class Sweep {
+    private static final String USAGE = "Usage: --sweep (--asm <input_file> | --replay <trace_file>) [--sets N,...] [--ways N,...] "
+            + "[--line-size N,...] [--addr-len N] [--policies lru,plru,...] [--threads N] [--threaded] "
+            + "[--max-instructions N] [--timeout ms] [--detect-idle] [--out <file>]";
+
+    static final class Result {
+        final CacheConfig config;
+        final CacheStats stats;
+
+        Result(CacheConfig config, CacheStats stats) {
+            this.config = config;
+            this.stats = stats;
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String inputFileName = null;
+        String traceFileName = null;
+        String outputFileName = null;
+        int addrLen = CacheConfig.defaults().addrLen;
+        int[] sets = {CacheConfig.defaults().sets};
+        int[] ways = {CacheConfig.defaults().ways};
+        int[] lineSizes = {CacheConfig.defaults().lineSize};
+        String[] policies = {"lru", "plru"};
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean threaded = false;
+        long maxInstructions = 0;
+        long timeout = 0;
+        boolean detectIdle = false;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--sweep":
+                    break;
+                case "--asm":
+                    inputFileName = args[++i];
+                    break;
+                case "--replay":
+                    traceFileName = args[++i];
+                    break;
+                case "--out":
+                    outputFileName = args[++i];
+                    break;
+                case "--addr-len":
+                    addrLen = Integer.parseInt(args[++i]);
+                    break;
+                case "--sets":
+                    sets = parseList(args[++i]);
+                    break;
+                case "--ways":
+                    ways = parseList(args[++i]);
+                    break;
+                case "--line-size":
+                    lineSizes = parseList(args[++i]);
+                    break;
+                case "--policies":
+                    policies = args[++i].toLowerCase().split(",");
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--threaded":
+                    threaded = true;
+                    break;
+                case "--max-instructions":
+                    maxInstructions = Long.parseLong(args[++i]);
+                    break;
+                case "--timeout":
+                    timeout = Long.parseLong(args[++i]);
+                    break;
+                case "--detect-idle":
+                    detectIdle = true;
+                    break;
+                default:
+                    System.err.println("Unknown argument: " + args[i] + ". " + USAGE);
+                    System.exit(1);
+            }
+        }
+
+        if (inputFileName == null && traceFileName == null) {
+            System.err.println("Expected input file name. " + USAGE);
+            System.exit(1);
+        }
+
+        List<CacheConfig> configs = new ArrayList<>();
+        for (int s : sets) {
+            for (int w : ways) {
+                for (int l : lineSizes) {
+                    configs.add(new CacheConfig(addrLen, s, w, l));
+                }
+            }
+        }
+
+        List<Result> results;
+        if (traceFileName != null) {
+            try (TraceFile trace = TraceFile.open(traceFileName)) {
+                results = replay(trace::reader, configs, policies, threads);
+            }
+        } else {
+            Assembler parser = new Assembler(Main.registerMap);
+            parser.parse(AsmLexer.open(inputFileName));
+            results = run(parser.getCommands(), parser.textSize(), configs, policies, threads, threaded,
+                    maxInstructions, timeout, detectIdle);
+        }
+
+        if (outputFileName == null) {
+            PrintWriter out = new PrintWriter(System.out, false, StandardCharsets.UTF_8);
+            writeCsv(out, results);
+            out.flush();
+        } else {
+            try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get(outputFileName)))) {
+                if (outputFileName.endsWith(".json")) {
+                    writeJson(out, results);
+                } else {
+                    writeCsv(out, results);
+                }
+            }
+        }
+    }
+
+    static List<Result> run(int[] commands, int textSize, List<CacheConfig> configs, String[] policies,
+                            int threads, boolean threaded, long maxInstructions, long timeout, boolean detectIdle)
+            throws InterruptedException {
+        // поток адресов от геометрии кэша не зависит: трасса для прогона пишется один раз до раздачи задач,
+        // а потоки читают общий буфер каждый своим TraceReader. Исполнение на каждую геометрию нужно только lru и plru
+        List<String> policyList = Arrays.asList(policies);
+        boolean executed = policyList.contains("lru") || policyList.contains("plru");
+        TraceBuffer trace = Arrays.asList("lru", "plru").containsAll(policyList) ? null : new TraceBuffer();
+        if (trace != null) {
+            execute(commands, textSize, configs.get(0), trace, threaded, maxInstructions, timeout, detectIdle);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<CacheStats[]>> runs = new ArrayList<>(configs.size());
+            for (CacheConfig config : configs) {
+                runs.add(pool.submit(() -> {
+                    List<CacheStats> stats = new ArrayList<>();
+                    if (executed) {
+                        CPU processor = execute(commands, textSize, config, null, threaded, maxInstructions,
+                                timeout, detectIdle);
+                        stats.addAll(Arrays.asList(processor.cacheStatistics()));
+                    }
+                    for (String policy : policies) {
+                        if (!policy.equals("lru") && !policy.equals("plru")) {
+                            stats.add(TraceReplay.replay(trace::reader, config, policy));
+                        }
+                    }
+                    return stats.toArray(new CacheStats[0]);
+                }));
+            }
+
+            List<Result> results = new ArrayList<>(configs.size() * policies.length);
+            for (int i = 0; i < configs.size(); i++) {
+                CacheStats[] stats = runs.get(i).get();
+                for (String policy : policies) {
+                    results.add(new Result(configs.get(i), find(stats, policy)));
+                }
+            }
+            return results;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Simulation failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static CPU execute(int[] commands, int textSize, CacheConfig config, TraceSink trace, boolean threaded,
+                               long maxInstructions, long timeout, boolean detectIdle) {
+        CPU processor = new CPU(Memory.allocate(config.addrLen), Main.registerMap, config);
+        processor.setThreaded(threaded);
+        processor.setTrace(trace);
+        processor.setLimits(maxInstructions, timeout, detectIdle);
+        int stop = processor.executeProgram(commands, textSize);
+        if (stop != CPU.STOP_FINISHED) {
+            System.err.println((trace == null ? config : "trace") + ": stopped by " + CPU.STOP_NAMES[stop]
+                    + " after " + processor.executed + " instructions");
+        }
+        return processor;
+    }
+
+    static List<Result> replay(Supplier<TraceReader> trace, List<CacheConfig> configs, String[] policies, int threads)
+            throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<CacheStats>> runs = new ArrayList<>(configs.size() * policies.length);
+            for (CacheConfig config : configs) {
+                for (String policy : policies) {
+                    runs.add(pool.submit(() -> TraceReplay.replay(trace, config, policy)));
+                }
+            }
+
+            List<Result> results = new ArrayList<>(runs.size());
+            for (int i = 0; i < runs.size(); i++) {
+                results.add(new Result(configs.get(i / policies.length), runs.get(i).get()));
+            }
+            return results;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Replay failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static CacheStats find(CacheStats[] stats, String policy) {
+        for (CacheStats s : stats) {
+            if (s.name.equalsIgnoreCase(policy)) {
+                return s;
+            }
+        }
+        throw new IllegalArgumentException("Unknown replacement policy: " + policy);
+    }
+
+    private static int[] parseList(String list) {
+        String[] parts = list.split(",");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Integer.parseInt(parts[i].trim());
+        }
+        return values;
+    }
+
+    static void writeCsv(PrintWriter out, List<Result> results) {
+        out.println("sets,ways,line_size,cache_size,policy,instr_accesses,data_accesses,misses,evictions,write_backs,"
+                + "hit_rate,instr_hit_rate,data_hit_rate");
+        for (Result r : results) {
+            CacheStats s = r.stats;
+            out.printf(Locale.ROOT, "%d,%d,%d,%d,%s,%d,%d,%d,%d,%d,%.5f,%.5f,%.5f%n",
+                    r.config.sets, r.config.ways, r.config.lineSize, r.config.cacheSize, s.name,
+                    s.accesses(CacheStats.INSTRUCTION), s.accesses(CacheStats.DATA), total(s.misses),
+                    total(s.evictions), total(s.writeBacks), s.hitRate(), s.hitRate(CacheStats.INSTRUCTION),
+                    s.hitRate(CacheStats.DATA));
+        }
+    }
+
+    static void writeJson(PrintWriter out, List<Result> results) {
+        out.println("[");
+        for (int i = 0; i < results.size(); i++) {
+            Result r = results.get(i);
+            CacheStats s = r.stats;
+            out.printf(Locale.ROOT, "  {\"sets\": %d, \"ways\": %d, \"line_size\": %d, \"cache_size\": %d, "
+                            + "\"policy\": \"%s\", \"instr_accesses\": %d, \"data_accesses\": %d, "
+                            + "\"misses\": %d, \"evictions\": %d, \"write_backs\": %d, "
+                            + "\"hit_rate\": %s, \"instr_hit_rate\": %s, \"data_hit_rate\": %s}%s%n",
+                    r.config.sets, r.config.ways, r.config.lineSize, r.config.cacheSize, s.name,
+                    s.accesses(CacheStats.INSTRUCTION), s.accesses(CacheStats.DATA), total(s.misses),
+                    total(s.evictions), total(s.writeBacks), json(s.hitRate()),
+                    json(s.hitRate(CacheStats.INSTRUCTION)), json(s.hitRate(CacheStats.DATA)),
+                    i + 1 < results.size() ? "," : "");
+        }
+        out.println("]");
+    }
+
+    private static long total(long[] counters) {
+        return counters[CacheStats.INSTRUCTION] + counters[CacheStats.DATA];
+    }
+
+    private static String json(double value) {
+        return Double.isNaN(value) ? "null" : String.format(Locale.ROOT, "%.5f", value);
+    }
+}
@@ -0,0 +1,46 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// Трасса в памяти: записывается один раз во время исполнения, читается сколько угодно раз,
+// в том числе одновременно из нескольких потоков (у каждого читателя своя позиция).
+// Для длинных трасс - TraceFile: буфер не растёт больше самого большого byte[].
+public final class TraceBuffer implements TraceSink {
+    static final int MAX_SIZE = Integer.MAX_VALUE - 8;
+
+    private final int[] last = new int[3];
+    private final int maxSize;
+    private byte[] data;
+    private int size;
+    private long events;
+
+    public TraceBuffer() {
+        this(MAX_SIZE);
+    }
+
+    TraceBuffer(int maxSize) {
+        this.maxSize = maxSize;
+        this.data = new byte[Math.min(1 << 16, maxSize)];
+    }
+
+    @Override
+    public void record(int kind, int address) {
+        if (size + TraceReader.MAX_EVENT_SIZE > data.length) {
+            int length = (int) Math.min(2L * data.length, maxSize);
+            if (size + TraceReader.MAX_EVENT_SIZE > length) {
+                throw new IllegalStateException("Trace does not fit in memory: more than " + maxSize + " bytes after "
+                        + events + " events. Write it to a file with Main --trace and use --sweep --replay");
+            }
+            data = Arrays.copyOf(data, length);
+        }
+        size = TraceReader.encode(kind, address, last, data, size);
+        events++;
+    }
+
+    public long events() {
+        return events;
+    }
+
+    public TraceReader reader() {
+        return new TraceReader(ByteBuffer.wrap(data, 0, size).asReadOnlyBuffer());
+    }
+}
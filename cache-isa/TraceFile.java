@@ -0,0 +1,132 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+// Трасса в файле: заголовок (magic, число событий, размер данных) и события в том же формате, что и TraceBuffer.
+// Запись идёт через буфер фиксированного размера, чтение - через окна MappedByteBuffer,
+// поэтому расход памяти не зависит от длины трассы.
+public final class TraceFile implements Closeable {
+    static final int MAGIC = 0x52565452; // "RVTR"
+    static final int HEADER_SIZE = 4 + 8 + 8;
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+    private static final long WINDOW_SIZE = 1L << 26;
+
+    private final FileChannel channel;
+    private final long events;
+    private final long size;
+
+    private TraceFile(FileChannel channel, long events, long size) {
+        this.channel = channel;
+        this.events = events;
+        this.size = size;
+    }
+
+    public static TraceFile open(String fileName) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining() && channel.read(header) >= 0) {
+        }
+        header.flip();
+        if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+            channel.close();
+            throw new IOException("Not a trace file: " + fileName);
+        }
+        long events = header.getLong();
+        long size = header.getLong();
+        if (HEADER_SIZE + size > channel.size()) {
+            channel.close();
+            throw new IOException("Truncated trace file: " + fileName);
+        }
+        return new TraceFile(channel, events, size);
+    }
+
+    public long events() {
+        return events;
+    }
+
+    // каждый читатель отображает свои окна, так что читать можно из нескольких потоков сразу
+    public TraceReader reader() {
+        return new MappedReader();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private final class MappedReader extends TraceReader {
+        private long windowStart = HEADER_SIZE;
+
+        MappedReader() {
+            super(ByteBuffer.allocate(0));
+            refill();
+        }
+
+        @Override
+        void refill() {
+            long position = windowStart + in.position();
+            long end = HEADER_SIZE + size;
+            if (position == end || windowStart + in.limit() == end) {
+                return;
+            }
+            try {
+                windowStart = position;
+                in = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_SIZE, end - position));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    public static final class Writer implements TraceSink, Closeable {
+        private final FileChannel channel;
+        private final int[] last = new int[3];
+        private final byte[] buffer = new byte[WRITE_BUFFER_SIZE];
+        private int position;
+        private long size;
+        private long events;
+
+        public Writer(String fileName) throws IOException {
+            channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            channel.position(HEADER_SIZE);
+        }
+
+        @Override
+        public void record(int kind, int address) {
+            if (position + TraceReader.MAX_EVENT_SIZE > buffer.length) {
+                flush();
+            }
+            position = TraceReader.encode(kind, address, last, buffer, position);
+            events++;
+        }
+
+        private void flush() {
+            try {
+                ByteBuffer out = ByteBuffer.wrap(buffer, 0, position);
+                while (out.hasRemaining()) {
+                    channel.write(out);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            size += position;
+            position = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putLong(events).putLong(size).flip();
+            while (header.hasRemaining()) {
+                channel.write(header, HEADER_SIZE - header.remaining());
+            }
+            channel.close();
+        }
+    }
+}
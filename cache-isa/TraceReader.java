@@ -0,0 +1,54 @@
+import java.nio.ByteBuffer;
+
+// Последовательное чтение трассы. Каждое событие - varint от (zigzag(delta) << 2 | kind),
+// где delta - разность с предыдущим адресом того же вида (для команд это почти всегда +4).
+public class TraceReader {
+    static final int MAX_EVENT_SIZE = 5;
+
+    ByteBuffer in;
+    private final int[] last = new int[3];
+    int kind;
+    int address;
+
+    public TraceReader(ByteBuffer in) {
+        this.in = in;
+    }
+
+    public boolean next() {
+        if (in.remaining() < MAX_EVENT_SIZE) {
+            refill();
+            if (!in.hasRemaining()) {
+                return false;
+            }
+        }
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+
+        kind = (int) (value & 3);
+        int zigzag = (int) (value >>> 2);
+        address = last[kind] += (zigzag >>> 1) ^ -(zigzag & 1);
+        return true;
+    }
+
+    // вызывается, когда в буфере может не хватить байт на целое событие
+    void refill() {
+    }
+
+    static int encode(int kind, int address, int[] last, byte[] out, int pos) {
+        int delta = address - last[kind];
+        last[kind] = address;
+        long value = ((long) ((delta << 1) ^ (delta >> 31)) & 0xFFFFFFFFL) << 2 | kind;
+        while ((value & ~0x7FL) != 0) {
+            out[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[pos++] = (byte) value;
+        return pos;
+    }
+}
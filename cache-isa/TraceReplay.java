@@ -0,0 +1,132 @@
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+// Прогон записанной трассы через модель кэша без исполнения программы.
+// Цикл прогона повторён для каждого класса кэша, чтобы вызовы в нём оставались мономорфными.
+public final class TraceReplay {
+    // nextUses держит номер события в int-массиве: длиннее трассу для OPT не посчитать
+    static final int MAX_OPT_EVENTS = Integer.MAX_VALUE - 8;
+
+    private TraceReplay() {
+    }
+
+    // трасса читается дважды только для OPT: первый проход вычисляет будущие обращения
+    static CacheStats replay(Supplier<TraceReader> trace, CacheConfig config, String policy) {
+        // кэши прогона моделируют только тэги, память им не нужна
+        Cache cache = Cache.create(policy, null, config);
+        if (cache instanceof LruCache) {
+            return replayLRU(trace.get(), (LruCache) cache);
+        }
+        if (cache instanceof BitPLruCache) {
+            return replayPLRU(trace.get(), (BitPLruCache) cache);
+        }
+        SetAssociativeCache setCache = (SetAssociativeCache) cache;
+        if (policy.equalsIgnoreCase("opt")) {
+            setCache.setFuture(nextUses(trace.get(), config));
+        }
+        return replaySetAssociative(trace.get(), setCache);
+    }
+
+    private static CacheStats replayLRU(TraceReader trace, LruCache cache) {
+        while (trace.next()) {
+            switch (trace.kind) {
+                case TraceSink.FETCH:
+                    cache.access(trace.address, CacheStats.INSTRUCTION);
+                    break;
+                case TraceSink.LOAD:
+                    cache.access(trace.address, CacheStats.DATA);
+                    break;
+                default:
+                    cache.write(trace.address);
+            }
+        }
+        return cache.stats;
+    }
+
+    private static CacheStats replayPLRU(TraceReader trace, BitPLruCache cache) {
+        while (trace.next()) {
+            switch (trace.kind) {
+                case TraceSink.FETCH:
+                    cache.access(trace.address, CacheStats.INSTRUCTION);
+                    break;
+                case TraceSink.LOAD:
+                    cache.access(trace.address, CacheStats.DATA);
+                    break;
+                default:
+                    cache.write(trace.address);
+            }
+        }
+        return cache.stats;
+    }
+
+    private static CacheStats replaySetAssociative(TraceReader trace, SetAssociativeCache cache) {
+        while (trace.next()) {
+            switch (trace.kind) {
+                case TraceSink.FETCH:
+                    cache.access(trace.address, CacheStats.INSTRUCTION);
+                    break;
+                case TraceSink.LOAD:
+                    cache.access(trace.address, CacheStats.DATA);
+                    break;
+                default:
+                    cache.write(trace.address);
+            }
+        }
+        return cache.stats;
+    }
+
+    // для каждого обращения - номер следующего обращения к той же линии (SetAssociativeCache.setFuture).
+    // Последнее обращение к линии - в хэш-таблице с открытой адресацией: lines - адрес линии,
+    // positions - номер обращения + 1 (0 - свободная ячейка, так что адрес линии может быть любым).
+    static int[] nextUses(TraceReader trace, CacheConfig config) {
+        int[] next = new int[1 << 16];
+        int[] lines = new int[1 << 10];
+        int[] positions = new int[1 << 10];
+        int used = 0;
+        int count = 0;
+        while (trace.next()) {
+            if (count == next.length) {
+                if (count == MAX_OPT_EVENTS) {
+                    throw new IllegalArgumentException("Trace is too long for opt: more than " + MAX_OPT_EVENTS
+                            + " events");
+                }
+                next = Arrays.copyOf(next, (int) Math.min(2L * count, MAX_OPT_EVENTS));
+            }
+            int line = config.lineAddress(config.tag(trace.address), config.index(trace.address));
+            int slot = slot(lines, positions, line);
+            if (positions[slot] != 0) {
+                next[positions[slot] - 1] = count;
+            } else {
+                // таблица растёт до вставки: новая линия ещё без позиции и при переносе потерялась бы
+                if (2 * ++used > lines.length) {
+                    int[] oldLines = lines;
+                    int[] oldPositions = positions;
+                    lines = new int[2 * oldLines.length];
+                    positions = new int[2 * oldLines.length];
+                    for (int i = 0; i < oldLines.length; i++) {
+                        if (oldPositions[i] != 0) {
+                            int moved = slot(lines, positions, oldLines[i]);
+                            lines[moved] = oldLines[i];
+                            positions[moved] = oldPositions[i];
+                        }
+                    }
+                    slot = slot(lines, positions, line);
+                }
+                lines[slot] = line;
+            }
+            positions[slot] = count + 1;
+            next[count++] = SetAssociativeCache.NEVER;
+        }
+        return next;
+    }
+
+    private static int slot(int[] lines, int[] positions, int line) {
+        int mask = lines.length - 1;
+        int hash = line * 0x9E3779B9;
+        int slot = (hash ^ hash >>> 16) & mask;
+        while (positions[slot] != 0 && lines[slot] != line) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+}
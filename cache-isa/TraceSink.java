@@ -0,0 +1,22 @@
+// Приёмник потока обращений к памяти, который CPU генерирует при исполнении программы
+public interface TraceSink {
+    int FETCH = 0;
+    int LOAD = 1;
+    int STORE = 2;
+
+    void record(int kind, int address);
+
+    // каждое обращение получают оба приёмника; любой из них может быть null
+    static TraceSink both(TraceSink first, TraceSink second) {
+        if (first == null) {
+            return second;
+        }
+        if (second == null) {
+            return first;
+        }
+        return (kind, address) -> {
+            first.record(kind, address);
+            second.record(kind, address);
+        };
+    }
+}
@@ -0,0 +1,343 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Генератор длинных программ для нагрузки на кэши и интерпретатор; вывод понимает Assembler.
+// Ядра:
+//   sweep  - гнездо из depth циклов, внутренний проходит массив size байт с шагом stride (чтение, с --stores запись);
+//   chase  - погоня за указателями по петле из size / stride узлов, порядок random или sequential;
+//   list   - обход связного списка узлов {value, next}, узлы разбросаны по памяти случайно;
+//   memcpy - копирование size байт по словам;
+//   matmul - C = A * B для матриц n x n.
+// Внешние циклы повторяются passes раз. Данные лежат после кода; заголовок программы
+// подсказывает --addr-len, при котором они помещаются в память.
+// Запуск: java -classpath . WorkloadGenerator <kernel> [--size BYTES] [--stride BYTES] [--passes N]
+//         [--depth N] [--n N] [--pattern random|sequential] [--stores] [--seed N] [--out <file.asm>]
+public class WorkloadGenerator {
+    private static final String USAGE = "Usage: WorkloadGenerator sweep|chase|list|memcpy|matmul [--size BYTES] "
+            + "[--stride BYTES] [--passes N] [--depth N] [--n N] [--pattern random|sequential] [--stores] "
+            + "[--seed N] [--out <file>]";
+    private static final int MAX_INSTRUCTION_WORDS = 5; // li и la раскрываются не больше чем в 5 команд
+
+    int size = 16 * 1024;
+    int stride = 64;
+    int passes = 10;
+    int depth = 1;
+    int n = 32;
+    boolean randomOrder = true;
+    boolean stores = false;
+    long seed = 1;
+
+    private final List<String> text = new ArrayList<>();
+    private final List<String> data = new ArrayList<>();
+    private long dataSize;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+        WorkloadGenerator generator = new WorkloadGenerator();
+        String outputFileName = null;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--size":
+                    generator.size = Integer.parseInt(args[++i]);
+                    break;
+                case "--stride":
+                    generator.stride = Integer.parseInt(args[++i]);
+                    break;
+                case "--passes":
+                    generator.passes = Integer.parseInt(args[++i]);
+                    break;
+                case "--depth":
+                    generator.depth = Integer.parseInt(args[++i]);
+                    break;
+                case "--n":
+                    generator.n = Integer.parseInt(args[++i]);
+                    break;
+                case "--pattern":
+                    generator.randomOrder = args[++i].equals("random");
+                    break;
+                case "--stores":
+                    generator.stores = true;
+                    break;
+                case "--seed":
+                    generator.seed = Long.parseLong(args[++i]);
+                    break;
+                case "--out":
+                    outputFileName = args[++i];
+                    break;
+                default:
+                    System.err.println("Unknown argument: " + args[i] + ". " + USAGE);
+                    System.exit(1);
+            }
+        }
+
+        List<String> program = generator.generate(args[0]);
+        if (outputFileName == null) {
+            PrintWriter out = new PrintWriter(System.out, false, StandardCharsets.UTF_8);
+            program.forEach(out::println);
+            out.flush();
+        } else {
+            Files.write(Paths.get(outputFileName), program);
+        }
+    }
+
+    List<String> generate(String kernel) {
+        if (stride < 4 || stride % 4 != 0 || size < stride || passes < 1 || depth < 1 || depth > 9 || n < 1) {
+            throw new IllegalArgumentException("Incorrect workload parameters: size " + size + ", stride " + stride
+                    + ", passes " + passes + ", depth " + depth + ", n " + n);
+        }
+        text.clear();
+        data.clear();
+        dataSize = 0;
+        switch (kernel) {
+            case "sweep":
+                sweep();
+                break;
+            case "chase":
+                chase();
+                break;
+            case "list":
+                list();
+                break;
+            case "memcpy":
+                memcpy();
+                break;
+            case "matmul":
+                matmul();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown kernel: " + kernel + ". " + USAGE);
+        }
+
+        List<String> program = new ArrayList<>(text.size() + data.size() + 3);
+        long end = CPU.TEXT_START + (long) MAX_INSTRUCTION_WORDS * 4 * text.size() + dataSize;
+        if (end > Assembler.LA_LIMIT) {
+            throw new IllegalArgumentException(String.format("Incorrect workload parameters: data may end at 0x%x, "
+                    + "but la reaches only below 0x%x; lower --size or --n", end, Assembler.LA_LIMIT));
+        }
+        program.add("# " + kernel + ": " + dataSize + " bytes of data, needs --addr-len "
+                + (64 - Long.numberOfLeadingZeros(end - 1)) + " or more");
+        program.addAll(text);
+        program.add(".data");
+        program.addAll(data);
+        return program;
+    }
+
+    private void emit(String line) {
+        text.add("    " + line);
+    }
+
+    private void label(String name) {
+        text.add(name + ":");
+    }
+
+    private void space(String name, long bytes) {
+        data.add(name + ":");
+        data.add("    .space " + bytes);
+        dataSize += bytes;
+    }
+
+    // t0 += bytes; для больших шагов шаг заранее лежит в t6
+    private void advance(String register, int bytes) {
+        if (bytes < 2048) {
+            emit("addi " + register + ", " + register + ", " + bytes);
+        } else {
+            emit("add " + register + ", " + register + ", t6");
+        }
+    }
+
+    private void sweep() {
+        emit("li s1, 0");
+        emit("li t6, " + stride);
+        for (int level = 1; level < depth; level++) {
+            emit("li s" + (level + 1) + ", " + passes);
+            label("level" + level);
+        }
+        emit("li s" + (depth + 1) + ", " + passes);
+        label("pass");
+        emit("la t0, array");
+        emit("li t1, " + size / stride);
+        label("sweep");
+        emit("lw t2, 0(t0)");
+        emit("add s1, s1, t2");
+        if (stores) {
+            emit("sw s1, 0(t0)");
+        }
+        advance("t0", stride);
+        emit("addi t1, t1, -1");
+        emit("bnez t1, sweep");
+        emit("addi s" + (depth + 1) + ", s" + (depth + 1) + ", -1");
+        emit("bnez s" + (depth + 1) + ", pass");
+        for (int level = depth - 1; level >= 1; level--) {
+            emit("addi s" + (level + 1) + ", s" + (level + 1) + ", -1");
+            emit("bnez s" + (level + 1) + ", level" + level);
+        }
+        space("array", size);
+    }
+
+    private void chase() {
+        int nodes = size / stride;
+        int[] next = new int[nodes];
+        for (int i = 0; i < nodes; i++) {
+            next[i] = (i + 1) % nodes;
+        }
+        if (randomOrder) {
+            // узлы в случайном порядке, связанные в одну петлю
+            int[] order = permutation(nodes);
+            for (int i = 0; i < nodes; i++) {
+                next[order[i]] = order[(i + 1) % nodes];
+            }
+        }
+        // счётчик шагов - один регистр: li принимает не больше 0xFFFFFFFF
+        long steps = (long) nodes * passes;
+        if (steps > 0xFFFFFFFFL) {
+            throw new IllegalArgumentException("Incorrect workload parameters: chase makes " + nodes + " nodes * "
+                    + passes + " passes = " + steps + " steps, at most " + 0xFFFFFFFFL + "; lower --passes or --size");
+        }
+        emit("la t0, node0");
+        emit("li t1, " + steps);
+        label("chase");
+        emit("lw t0, 0(t0)");
+        emit("addi t1, t1, -1");
+        emit("bnez t1, chase");
+        for (int i = 0; i < nodes; i++) {
+            data.add("node" + i + ":");
+            data.add("    .word node" + next[i]);
+            if (stride > 4) {
+                data.add("    .space " + (stride - 4));
+            }
+        }
+        dataSize += (long) nodes * stride;
+    }
+
+    private void list() {
+        int nodeSize = Math.max(8, stride);
+        int nodes = size / nodeSize;
+        // node<k> - k-й элемент списка, в памяти узлы идут в порядке slots
+        int[] slots = randomOrder ? permutation(nodes) : identity(nodes);
+        emit("li s1, 0");
+        emit("li s2, " + passes);
+        label("pass");
+        emit("la t0, node0");
+        label("walk");
+        emit("lw t2, 0(t0)");
+        emit("add s1, s1, t2");
+        emit("lw t0, 4(t0)");
+        emit("bnez t0, walk");
+        emit("addi s2, s2, -1");
+        emit("bnez s2, pass");
+        for (int k : slots) {
+            data.add("node" + k + ":");
+            data.add("    .word " + k);
+            data.add("    .word " + (k + 1 < nodes ? "node" + (k + 1) : "0"));
+            if (nodeSize > 8) {
+                data.add("    .space " + (nodeSize - 8));
+            }
+        }
+        dataSize += (long) nodes * nodeSize;
+    }
+
+    private void memcpy() {
+        emit("li s2, " + passes);
+        label("pass");
+        emit("la t0, source");
+        emit("la t1, destination");
+        emit("li t3, " + size / 4);
+        label("copy");
+        emit("lw t2, 0(t0)");
+        emit("sw t2, 0(t1)");
+        emit("addi t0, t0, 4");
+        emit("addi t1, t1, 4");
+        emit("addi t3, t3, -1");
+        emit("bnez t3, copy");
+        emit("addi s2, s2, -1");
+        emit("bnez s2, pass");
+        space("source", size);
+        space("destination", size);
+    }
+
+    private void matmul() {
+        long bytes = 4L * n * n;
+        // A[i] = B[i] = i
+        emit("la t0, a");
+        emit("la t1, b");
+        emit("li t3, 0");
+        emit("li t4, " + (long) n * n);
+        label("init");
+        emit("sw t3, 0(t0)");
+        emit("sw t3, 0(t1)");
+        emit("addi t0, t0, 4");
+        emit("addi t1, t1, 4");
+        emit("addi t3, t3, 1");
+        emit("blt t3, t4, init");
+
+        emit("la s6, a");
+        emit("la s7, b");
+        emit("la s8, c");
+        emit("li s9, " + n);
+        emit("li s10, " + 4 * n); // байт в строке
+        emit("li s11, " + passes);
+        label("pass");
+        emit("li s2, 0");
+        label("row");
+        emit("li s3, 0");
+        label("column");
+        emit("mul t0, s2, s10");
+        emit("add t0, t0, s6");
+        emit("slli t1, s3, 2");
+        emit("add t1, t1, s7");
+        emit("li t4, 0");
+        emit("li s4, 0");
+        label("dot");
+        emit("lw t2, 0(t0)");
+        emit("lw t3, 0(t1)");
+        emit("mul t2, t2, t3");
+        emit("add t4, t4, t2");
+        emit("addi t0, t0, 4");
+        emit("add t1, t1, s10");
+        emit("addi s4, s4, 1");
+        emit("blt s4, s9, dot");
+        emit("mul t5, s2, s10");
+        emit("add t5, t5, s8");
+        emit("slli t6, s3, 2");
+        emit("add t5, t5, t6");
+        emit("sw t4, 0(t5)");
+        emit("addi s3, s3, 1");
+        emit("blt s3, s9, column");
+        emit("addi s2, s2, 1");
+        emit("blt s2, s9, row");
+        emit("addi s11, s11, -1");
+        emit("bnez s11, pass");
+        space("a", bytes);
+        space("b", bytes);
+        space("c", bytes);
+    }
+
+    private int[] identity(int count) {
+        int[] values = new int[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = i;
+        }
+        return values;
+    }
+
+    private int[] permutation(int count) {
+        int[] values = identity(count);
+        Random random = new Random(seed);
+        for (int i = count - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = values[i];
+            values[i] = values[j];
+            values[j] = t;
+        }
+        return values;
+    }
+}
@@ -0,0 +1,84 @@
+package bench;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// JMH-замеры горячих путей симулятора. Сами замеры описаны в Benchmark.cases() (корень проекта),
+// чтобы быстрый прогон через javac и JMH мерили одно и то же. Классы симулятора лежат в пакете
+// по умолчанию, а JMH требует именованный пакет, поэтому замер берётся через отражение один раз
+// в @Setup; в измеряемом методе остаётся только вызов LongSupplier, мономорфный в своей JVM.
+// calls/s - вызовы тела замера, operations/s - операции замера (команды, обращения, слова),
+// байт на операцию - с -prof gc (gc.alloc.rate.norm делить на operations одного вызова).
+// Запуск из каталога с rv32all.asm: java -jar target/benchmarks.jar [-p name=<замер>] [-prof gc]
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class SimulatorBenchmark {
+    @Param({
+            "assemble.rv32all", "assemble.rv32task",
+            "execute.rv32all.interpreter", "execute.rv32all.threaded",
+            "execute.rv32task.interpreter", "execute.rv32task.threaded",
+            "execute.loop.interpreter", "execute.loop.threaded",
+            "cache.lru.sequential", "cache.lru.strided", "cache.lru.random",
+            "cache.plru.sequential", "cache.plru.strided", "cache.plru.random",
+            "memory.DenseMemory.18.readWord", "memory.DenseMemory.18.writeWord",
+            "memory.SparseMemory.32.readWord", "memory.SparseMemory.32.writeWord",
+            "memory.BufferMemory.18.readWord", "memory.BufferMemory.18.writeWord"
+    })
+    public String name;
+
+    private LongSupplier body;
+    private long operations;
+
+    // операции замера за итерацию; JMH выводит их как отдельную метрику в единицах в секунду
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long operations;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            operations = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws ReflectiveOperationException {
+        Method find = Class.forName("Benchmark").getDeclaredMethod("find", String.class);
+        find.setAccessible(true);
+        Object found = find.invoke(null, name);
+        body = (LongSupplier) field(found, "body");
+        operations = (Long) field(found, "operations");
+    }
+
+    private static Object field(Object target, String name) throws ReflectiveOperationException {
+        Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        return field.get(target);
+    }
+
+    @Benchmark
+    public long calls(Counters counters) {
+        counters.operations += operations;
+        return body.getAsLong();
+    }
+}
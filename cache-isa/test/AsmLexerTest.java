@@ -0,0 +1,86 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class AsmLexerTest {
+    // пустые строки и комментарии пропускаются, метка отделяется от команды, скобки и запятые - разделители
+    @Test
+    void splitsStatements() {
+        AsmLexer lexer = new AsmLexer(ByteBuffer.wrap((
+                "# header\r\n"
+                + "\n"
+                + "start:  addi t0,zero,-0x10 ; comment, with (separators)\r\n"
+                + "\tsw t0, 8(sp)\n"
+                + "end:\n"
+                + "  ret").getBytes(StandardCharsets.UTF_8)));
+
+        assertTrue(lexer.nextStatement());
+        assertEquals(3, lexer.line());
+        assertEquals("start", lexer.labelText());
+        assertEquals("addi", lexer.mnemonicText());
+        assertEquals(3, lexer.operandCount);
+        assertEquals("zero", lexer.operandText(1));
+        assertEquals(-16, lexer.immediate(2));
+
+        assertTrue(lexer.nextStatement());
+        assertEquals(0, lexer.labelLength);
+        assertEquals("sw", lexer.mnemonicText());
+        assertEquals(3, lexer.operandCount);
+        assertEquals(8, lexer.immediate(1));
+        assertEquals("sp", lexer.operandText(2));
+
+        assertTrue(lexer.nextStatement());
+        assertEquals("end", lexer.labelText());
+        assertEquals(0, lexer.mnemonicLength);
+
+        assertTrue(lexer.nextStatement());
+        assertEquals(6, lexer.line());
+        assertEquals("ret", lexer.mnemonicText());
+        assertEquals(0, lexer.operandCount);
+        assertFalse(lexer.nextStatement());
+    }
+
+    // больше восьми операндов - массивы растут
+    @Test
+    void acceptsManyOperands() {
+        AsmLexer lexer = AsmLexer.of(Arrays.asList(".word 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 0xFFFFFFFF"));
+        assertTrue(lexer.nextStatement());
+        assertEquals(11, lexer.operandCount);
+        assertEquals(10, lexer.immediate(9));
+        assertEquals(-1, lexer.immediate(10));
+    }
+
+    @Test
+    void rejectsIncorrectNumbers() {
+        AsmLexer lexer = AsmLexer.of(Arrays.asList("li t0, 12a, 0x, 0x100000000"));
+        assertTrue(lexer.nextStatement());
+        assertThrows(NumberFormatException.class, () -> lexer.immediate(1));
+        assertThrows(NumberFormatException.class, () -> lexer.immediate(2));
+        assertThrows(NumberFormatException.class, () -> lexer.immediate(3));
+        assertThrows(IllegalArgumentException.class, () -> lexer.immediate(4));
+    }
+
+    // поиск имён не зависит от регистра и не путает имена с общим префиксом
+    @Test
+    void findsNamesIgnoringCase() {
+        Map<String, Integer> names = new HashMap<>();
+        names.put("t0", 5);
+        names.put("t1", 6);
+        names.put("s10", 26);
+        AsmLexer.Names table = new AsmLexer.Names(names);
+        AsmLexer lexer = AsmLexer.of(Arrays.asList("add T0, s1, S10"));
+        assertTrue(lexer.nextStatement());
+        assertEquals(5, lexer.register(0, table));
+        assertFalse(lexer.isRegister(1, table));
+        assertEquals(26, lexer.register(2, table));
+    }
+}
@@ -0,0 +1,80 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+class AssemblerTest {
+    private static int[] assemble(String... lines) {
+        Assembler assembler = new Assembler(Main.registerMap);
+        assembler.parse(Arrays.asList(lines));
+        return assembler.getCommands();
+    }
+
+    // отдельный модуль: данные сразу за командами, адреса от CPU.TEXT_START
+    @Test
+    void absoluteAddressesInSingleModule() {
+        int[] image = assemble("    la t0, x", ".data", "x:", "    .word x");
+        assertEquals(4, image.length);
+        assertEquals(CPU.TEXT_START + 12, image[3]);
+    }
+
+    // la - это addi/slli/addi: адреса от Assembler.LA_LIMIT и выше не собрать, об этом говорит ошибка
+    @Test
+    void laRangeIsLimited() {
+        int below = Assembler.LA_LIMIT - 4 - (CPU.TEXT_START + 12);
+        int[] image = assemble("    la t0, x", ".data", "    .space " + below, "x:", "    .word 0");
+        assertEquals(Assembler.LA_LIMIT - 4, (image[0] >> 20 << 12) + (image[2] >> 20));
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> assemble("    la t0, x", ".data", "    .space " + (below + 4), "x:", "    .word 0"));
+        assertTrue(e.getMessage().contains("0x7ff800"), e.getMessage());
+    }
+
+    // по одной команде каждого формата, с отрицательными смещениями
+    @Test
+    void encodesEachFormat() {
+        int[] image = assemble(
+                "loop:",
+                "    add a0, a1, a2",
+                "    mul a0, a1, a2",
+                "    addi t0, zero, -1",
+                "    srai t0, t1, 3",
+                "    lw t1, 8(sp)",
+                "    sw t1, -4(sp)",
+                "    beq a0, a1, loop",
+                "    lui t0, 0x12345",
+                "    j loop",
+                "    j end",
+                "    nop",
+                "end:",
+                "    nop");
+        int[] expected = {
+                0x00C58533, 0x02C58533, 0xFFF00293, 0x40335293, 0x00812303, 0xFE612E23,
+                0xFEB504E3, 0x123452B7, 0xFE1FF06F, 0x0080006F, 0x00000013, 0x00000013,
+        };
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(Integer.toHexString(expected[i]), Integer.toHexString(image[i]), "command " + i);
+        }
+    }
+
+    @Test
+    void jalrTakesRegisterAndOffset() {
+        // jalr s1, ra, 4
+        assertEquals(0x004084E7, assemble("    jalr s1, ra, 4")[0]);
+    }
+
+    @Test
+    void jalrRejectsLabelOffset() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> assemble("start:", "    jalr ra, zero, start"));
+        assertTrue(e.getMessage().contains("label"), e.getMessage());
+    }
+
+    @Test
+    void jalrRejectsLabelBase() {
+        assertThrows(IllegalArgumentException.class, () -> assemble("    jalr ra, start(zero)", "start:", "    nop"));
+    }
+}
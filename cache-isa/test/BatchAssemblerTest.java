@@ -0,0 +1,82 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BatchAssemblerTest {
+    @TempDir
+    Path dir;
+
+    private Path write(String name, String... lines) throws IOException {
+        return Files.write(dir.resolve(name), Arrays.asList(lines));
+    }
+
+    // la и .word на метку данных следующего модуля - из первого модуля и из самого этого модуля:
+    // все команды идут подряд, данные - после них
+    @Test
+    void absoluteAddressesOfLaterModule() throws IOException, InterruptedException {
+        Path first = write("a.asm",
+                "    la t0, val",   // 3 команды
+                "    lw t1, 0(t0)",
+                "    la t2, ptr",   // 3 команды
+                ".data",
+                "ptr:",
+                "    .word val");
+        Path second = write("b.asm",
+                "    la t3, val",
+                "    lw t4, 0(t3)",
+                ".data",
+                "    .word 7",
+                "val:",
+                "    .word 42",
+                "self:",
+                "    .word val");
+        int[] image = BatchAssembler.assembleLinked(List.of(first, second), 2);
+
+        int textSize = 7 + 4;
+        int ptr = CPU.TEXT_START + 4 * textSize;
+        int val = ptr + 4 + 4;
+        assertEquals(textSize + 4, image.length);
+        assertEquals(val, image[textSize]); // ptr: .word val
+        assertEquals(7, image[textSize + 1]);
+        assertEquals(42, image[textSize + 2]);
+        assertEquals(val, image[textSize + 3]); // self: .word val
+
+        CPU processor = new CPU(Memory.allocate(18), Main.registerMap, CacheConfig.defaults());
+        processor.executeProgram(image, textSize);
+        assertEquals(val, register(processor, "t0"));
+        assertEquals(42, register(processor, "t1"));
+        assertEquals(ptr, register(processor, "t2"));
+        assertEquals(val, register(processor, "t3"));
+        assertEquals(42, register(processor, "t4"));
+    }
+
+    private static int register(CPU processor, String name) {
+        return processor.registers[Main.registerMap.get(name)];
+    }
+
+    // переход в метку другого модуля и ссылка на свою метку, одноимённую с меткой другого модуля
+    @Test
+    void branchesAcrossModules() throws IOException, InterruptedException {
+        Path first = write("a.asm",
+                "    j far",
+                "local:",
+                "    nop");
+        Path second = write("b.asm",
+                "local:",
+                "    nop",
+                "far:",
+                "    j local");
+        int[] image = BatchAssembler.assembleLinked(List.of(first, second), 2);
+
+        Assembler expected = new Assembler(Main.registerMap);
+        expected.parse(List.of("    j 12", "    nop", "    nop", "    j -4"));
+        assertEquals(Arrays.toString(expected.getCommands()), Arrays.toString(image));
+    }
+}
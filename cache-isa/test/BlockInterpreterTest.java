@@ -0,0 +1,120 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class BlockInterpreterTest {
+    // все виды команд блока, jal/jalr и загрузки с записями посреди линии команд
+    private static final List<String> PROGRAM = Arrays.asList(
+            "    li s1, 40",
+            "outer:",
+            "    la t0, array",
+            "    li t1, 16",
+            "inner:",
+            "    lw t2, 0(t0)",
+            "    add t2, t2, s1",
+            "    mul t3, t2, t1",
+            "    mulh t4, t3, t2",
+            "    srl t3, t3, t1",
+            "    sra t4, t4, t1",
+            "    sltu t5, t3, t2",
+            "    slt t6, t4, t3",
+            "    rem a1, t2, t1",
+            "    divu a2, t2, t1",
+            "    sltiu a3, t2, 100",
+            "    srli a4, t2, 3",
+            "    sw t2, 0(t0)",
+            "    sb t5, 1(t0)",
+            "    addi t0, t0, 4",
+            "    addi t1, t1, -1",
+            "    bnez t1, inner",
+            "    jal a0, sub",
+            "    nop",
+            "    addi s1, s1, -1",
+            "    bnez s1, outer",
+            "    j end",
+            "sub:",
+            "    xori a5, a5, 5",
+            "    auipc a6, 0",
+            "    jalr zero, a0, 0",
+            "end:",
+            "    nop",
+            ".data",
+            "array:",
+            "    .space 64");
+
+    // блоки должны давать ту же статистику кэшей, что и интерпретатор, при любой длине линии
+    @Test
+    void matchesInterpreter() {
+        for (int lineSize : new int[]{4, 8, 16, 64}) {
+            for (int ways : new int[]{1, 2}) {
+                CacheConfig config = new CacheConfig(18, 2, ways, lineSize);
+                CPU interpreter = run(config, false);
+                CPU threaded = run(config, true);
+                String where = "line " + lineSize + ", ways " + ways;
+                assertEquals(interpreter.executed, threaded.executed, where);
+                assertEquals(interpreter.PC, threaded.PC, where);
+                assertArrayEquals(interpreter.registers, threaded.registers, where);
+                for (int i = 0; i < 2; i++) {
+                    CacheStats expected = interpreter.cacheStatistics()[i];
+                    CacheStats actual = threaded.cacheStatistics()[i];
+                    assertArrayEquals(expected.hits, actual.hits, where);
+                    assertArrayEquals(expected.misses, actual.misses, where);
+                    assertArrayEquals(expected.evictions, actual.evictions, where);
+                }
+            }
+        }
+    }
+
+    // остановка по ra внутри скомпилированного блока: блок sub входит дважды, второй раз a0 = ra,
+    // и jalr срабатывает как ret. PC после остановки - тот же, что у интерпретатора
+    @Test
+    void stopsAtSamePcAsInterpreter() {
+        List<String> program = Arrays.asList(
+                "    li t1, 2",
+                "    la a0, back",
+                "    j sub",
+                "back:",
+                "    nop",
+                "    mv a0, ra",
+                "    j sub",
+                "sub:",
+                "    addi t1, t1, -1",
+                "    jalr zero, a0, 0",
+                "    nop");
+        List<String> ret = Arrays.asList(
+                "    li t1, 3",
+                "loop:",
+                "    addi t1, t1, -1",
+                "    bnez t1, loop",
+                "    ret",
+                "    nop");
+        for (List<String> source : Arrays.asList(program, ret)) {
+            CacheConfig config = CacheConfig.defaults();
+            CPU interpreter = run(config, false, source);
+            CPU threaded = run(config, true, source);
+            assertTrue(interpreter.ra);
+            assertTrue(threaded.ra);
+            assertEquals(interpreter.PC, threaded.PC);
+            assertEquals(interpreter.executed, threaded.executed);
+            assertArrayEquals(interpreter.registers, threaded.registers);
+        }
+    }
+
+    private static CPU run(CacheConfig config, boolean threaded) {
+        return run(config, threaded, PROGRAM);
+    }
+
+    private static CPU run(CacheConfig config, boolean threaded, List<String> program) {
+        Assembler assembler = new Assembler(Main.registerMap);
+        assembler.parse(program);
+        CPU processor = new CPU(Memory.allocate(config.addrLen), Main.registerMap, config);
+        processor.setThreaded(threaded);
+        processor.executeProgram(assembler.getCommands(), assembler.textSize());
+        return processor;
+    }
+}
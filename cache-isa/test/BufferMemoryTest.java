@@ -0,0 +1,79 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BufferMemoryTest {
+    @TempDir
+    Path dir;
+
+    // данные в файле-образе переживают повторное открытие; размер файла - заголовок и 2^addrLen байт
+    @Test
+    void mappedImageKeepsData() throws IOException {
+        String image = dir.resolve("memory.img").toString();
+        BufferMemory memory = BufferMemory.mapped(image, 18);
+        assertFalse(memory.hasImageProgram());
+        memory.writeWord(0x3FFFE, 0x01020304);
+        memory.writeWord(0x100, 0xDEADBEEF);
+        memory.flush();
+        assertEquals(4096 + (1 << 18), Files.size(dir.resolve("memory.img")));
+
+        BufferMemory reopened = BufferMemory.mapped(image, 18);
+        assertEquals(0xDEADBEEF, reopened.readWord(0x100));
+        assertEquals(0x01020304, reopened.readWord(0x3FFFE));
+        assertEquals(0x0102, reopened.readHalf(0));
+    }
+
+    // программа, собранная в образ, запускается из него без исходника и даёт тот же результат
+    @Test
+    void runsProgramFromImage() throws IOException {
+        Assembler assembler = new Assembler(Main.registerMap);
+        assembler.parse(Arrays.asList(
+                "    la t0, array",
+                "    li t1, 8",
+                "    li t2, 0",
+                "loop:",
+                "    lw t3, 0(t0)",
+                "    add t2, t2, t3",
+                "    addi t0, t0, 4",
+                "    addi t1, t1, -1",
+                "    bnez t1, loop",
+                ".data",
+                "array:",
+                "    .word 1, 2, 3, 4, 5, 6, 7, 8"));
+        String image = dir.resolve("program.img").toString();
+        BufferMemory memory = BufferMemory.mapped(image, 18);
+        CPU first = new CPU(memory, Main.registerMap, CacheConfig.defaults());
+        first.loadProgram(assembler.getCommands(), assembler.textSize());
+        memory.setImageProgram(assembler.textSize(), CPU.TEXT_START);
+        first.runToEnd();
+        memory.flush();
+        assertEquals(36, first.registers[Main.registerMap.get("t2")]);
+
+        BufferMemory reopened = BufferMemory.mapped(image, 18);
+        assertTrue(reopened.hasImageProgram());
+        assertEquals(assembler.textSize(), reopened.imageTextSize());
+        CPU second = new CPU(reopened, Main.registerMap, CacheConfig.defaults());
+        second.startProgram(reopened.imageTextSize(), reopened.imageEntry());
+        second.runToEnd();
+        assertArrayEquals(first.registers, second.registers);
+        assertEquals(first.executed, second.executed);
+    }
+
+    @Test
+    void rejectsImageOfOtherSize() throws IOException {
+        String image = dir.resolve("memory.img").toString();
+        BufferMemory.mapped(image, 18).setImageProgram(1, CPU.TEXT_START);
+        IOException e = assertThrows(IOException.class, () -> BufferMemory.mapped(image, 20));
+        assertTrue(e.getMessage().contains("--addr-len 18"), e.getMessage());
+    }
+}
@@ -0,0 +1,71 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+class CacheConfigTest {
+    // разбиение адреса на tag/index/offset и обратная сборка - сдвигами для степеней двойки
+    // и делением для остальных геометрий; адреса с установленным старшим битом - беззнаковые
+    @Test
+    void splitsAndRebuildsAddresses() {
+        CacheConfig[] configs = {
+                new CacheConfig(32, 8, 4, 64),
+                new CacheConfig(32, 6, 2, 48),
+                new CacheConfig(18, 1, 4, 4),
+        };
+        int[] addresses = {0, 4, 63, 64, 0x12345, 0x3FFFF, 0x80000004, 0xFFFFFFFC};
+        for (CacheConfig config : configs) {
+            for (int address : addresses) {
+                long unsigned = Integer.toUnsignedLong(address);
+                String where = config + " " + Integer.toHexString(address);
+                assertEquals(unsigned / config.lineSize / config.sets, Integer.toUnsignedLong(config.tag(address)), where);
+                assertEquals(unsigned / config.lineSize % config.sets, config.index(address), where);
+                assertEquals(unsigned % config.lineSize, config.offset(address), where);
+                assertEquals(address - config.offset(address),
+                        config.lineAddress(config.tag(address), config.index(address)), where);
+            }
+        }
+    }
+
+    @Test
+    void rejectsIncorrectGeometry() {
+        assertThrows(IllegalArgumentException.class, () -> new CacheConfig(33, 8, 4, 64));
+        assertThrows(IllegalArgumentException.class, () -> new CacheConfig(18, 0, 4, 64));
+        assertThrows(IllegalArgumentException.class, () -> new CacheConfig(18, 8, 0, 64));
+        assertThrows(IllegalArgumentException.class, () -> new CacheConfig(18, 8, 4, 6));
+    }
+
+    // два прохода по 8 линиям данных: в кэш на 32 линии второй проход попадает целиком вместе
+    // с командами, в кэше на 4 линии второй проход снова промахивается
+    @Test
+    void processorUsesGivenGeometry() {
+        assertEquals(8, dataMisses(new CacheConfig(18, 8, 4, 16)));
+        assertEquals(8, dataMisses(new CacheConfig(18, 32, 1, 16)));
+        assertTrue(dataMisses(new CacheConfig(18, 1, 4, 16)) > 8);
+    }
+
+    private static long dataMisses(CacheConfig config) {
+        Assembler assembler = new Assembler(Main.registerMap);
+        assembler.parse(Arrays.asList(
+                "    li s1, 2",
+                "pass:",
+                "    la t0, array",
+                "    li t1, 8",
+                "loop:",
+                "    lw t2, 0(t0)",
+                "    addi t0, t0, 16",
+                "    addi t1, t1, -1",
+                "    bnez t1, loop",
+                "    addi s1, s1, -1",
+                "    bnez s1, pass",
+                ".data",
+                "array:",
+                "    .space 128"));
+        CPU processor = new CPU(Memory.allocate(config.addrLen), Main.registerMap, config);
+        processor.executeProgram(assembler.getCommands(), assembler.textSize());
+        return processor.cacheStatistics()[0].misses[CacheStats.DATA];
+    }
+}
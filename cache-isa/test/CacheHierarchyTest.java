@@ -0,0 +1,102 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class CacheHierarchyTest {
+    private static final int LINES = 96;
+
+    private static CacheHierarchy hierarchy(String l2, String inclusion) {
+        return new CacheHierarchy(
+                CacheHierarchy.parseLevel("L1I", "2,2,16", 18, 1, null),
+                CacheHierarchy.parseLevel("L1D", "2,2,16,plru", 18, 1, null),
+                CacheHierarchy.parseLevel("L2", l2, 18, 10, null),
+                CacheHierarchy.inclusion(inclusion), 100);
+    }
+
+    // случайный поток команд, загрузок и записей по LINES линиям; после каждого события проверяется каждая линия
+    private static void replay(CacheHierarchy levels, Random random, Runnable check) {
+        for (int i = 0; i < 5000; i++) {
+            int kind = random.nextInt(3);
+            int line = random.nextInt(LINES);
+            levels.record(kind, (kind == TraceSink.FETCH ? CPU.TEXT_START : 0x20000) + 16 * line + random.nextInt(16));
+            check.run();
+        }
+    }
+
+    // INCLUSIVE: линия из L1 всегда есть и в L2, в том числе при линиях L2 больше линий L1
+    @Test
+    void inclusiveKeepsL1InL2() {
+        for (String l2 : new String[]{"4,2,16", "2,2,32,fifo"}) {
+            CacheHierarchy levels = hierarchy(l2, "inclusive");
+            replay(levels, new Random(6), () -> {
+                for (int line = 0; line < LINES; line++) {
+                    for (int base : new int[]{CPU.TEXT_START, 0x20000}) {
+                        int address = base + 16 * line;
+                        if (levels.l1i.cache.contains(address) || levels.l1d.cache.contains(address)) {
+                            assertTrue(levels.l2.cache.contains(address), l2 + " " + Integer.toHexString(address));
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    // EXCLUSIVE: линия лежит не больше чем на одном уровне, обращения к памяти - промахи L2
+    @Test
+    void exclusiveNeverDuplicatesLines() {
+        CacheHierarchy levels = hierarchy("4,2,16", "exclusive");
+        replay(levels, new Random(7), () -> {
+            for (int line = 0; line < LINES; line++) {
+                for (int base : new int[]{CPU.TEXT_START, 0x20000}) {
+                    int address = base + 16 * line;
+                    boolean l1 = levels.l1i.cache.contains(address) || levels.l1d.cache.contains(address);
+                    assertFalse(l1 && levels.l2.cache.contains(address), Integer.toHexString(address));
+                }
+            }
+        });
+        CacheStats l2 = levels.l2.stats();
+        assertEquals(l2.misses[CacheStats.INSTRUCTION] + l2.misses[CacheStats.DATA], levels.memoryAccesses());
+        assertTrue(l2.hits() > 0);
+    }
+
+    // NINE: L2 не влияет на L1, так что L1 ведут себя как отдельные кэши; L2 видит каждый промах L1
+    @Test
+    void nineLeavesL1Independent() {
+        CacheHierarchy levels = hierarchy("4,2,32", "nine");
+        Cache instructions = Cache.create("lru", null, new CacheConfig(18, 2, 2, 16));
+        Cache data = Cache.create("plru", null, new CacheConfig(18, 2, 2, 16));
+        Random random = new Random(8);
+        for (int i = 0; i < 5000; i++) {
+            int kind = random.nextInt(3);
+            int address = (kind == TraceSink.FETCH ? CPU.TEXT_START : 0x20000) + random.nextInt(16 * LINES);
+            levels.record(kind, address);
+            if (kind == TraceSink.FETCH) {
+                instructions.access(address, CacheStats.INSTRUCTION);
+            } else if (kind == TraceSink.LOAD) {
+                data.access(address, CacheStats.DATA);
+            } else {
+                data.write(address);
+            }
+        }
+        assertArrayEquals(instructions.stats().misses, levels.l1i.stats().misses);
+        assertArrayEquals(data.stats().misses, levels.l1d.stats().misses);
+        assertArrayEquals(data.stats().writeBacks, levels.l1d.stats().writeBacks);
+        CacheStats l2 = levels.l2.stats();
+        assertEquals(levels.l1i.stats().misses[CacheStats.INSTRUCTION], l2.accesses(CacheStats.INSTRUCTION));
+        assertEquals(levels.l1d.stats().misses[CacheStats.DATA], l2.accesses(CacheStats.DATA));
+    }
+
+    @Test
+    void rejectsIncompatibleLevels() {
+        assertThrows(IllegalArgumentException.class, () -> hierarchy("4,2,8", "inclusive"));
+        assertThrows(IllegalArgumentException.class, () -> hierarchy("4,2,32", "exclusive"));
+        assertThrows(IllegalArgumentException.class, () -> hierarchy("4,2,16,opt", "nine"));
+        assertThrows(IllegalArgumentException.class, () -> hierarchy("4,2,16", "mostly"));
+    }
+}
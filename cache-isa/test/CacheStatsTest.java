@@ -0,0 +1,66 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+class CacheStatsTest {
+    private static CPU run() {
+        Assembler assembler = new Assembler(Main.registerMap);
+        assembler.parse(Arrays.asList(
+                "    li t1, 100",
+                "    la t0, array",
+                "loop:",
+                "    lw t2, 0(t0)",
+                "    sw t2, 512(t0)",
+                "    addi t0, t0, 4",
+                "    addi t1, t1, -1",
+                "    bnez t1, loop",
+                ".data",
+                "array:",
+                "    .space 1024"));
+        CPU processor = new CPU(Memory.allocate(18), Main.registerMap, CacheConfig.defaults());
+        processor.executeProgram(assembler.getCommands(), assembler.textSize());
+        return processor;
+    }
+
+    // у каждого процессора своя статистика: второй прогон не накапливает счётчики первого
+    @Test
+    void countersBelongToProcessor() {
+        CPU first = run();
+        CPU second = run();
+        for (int i = 0; i < 2; i++) {
+            CacheStats a = first.cacheStatistics()[i];
+            CacheStats b = second.cacheStatistics()[i];
+            assertArrayEquals(a.hits, b.hits);
+            assertArrayEquals(a.misses, b.misses);
+            assertEquals(first.executed, b.accesses(CacheStats.INSTRUCTION));
+            assertEquals(200, b.accesses(CacheStats.DATA));
+            for (int kind = CacheStats.INSTRUCTION; kind <= CacheStats.DATA; kind++) {
+                assertEquals(b.misses[kind], b.coldMisses[kind] + b.evictions[kind]);
+            }
+        }
+
+        second.resetStatistics();
+        assertEquals(0, second.cacheStatistics()[0].accesses());
+        assertTrue(first.cacheStatistics()[0].accesses() > 0);
+    }
+
+    // без обращений доля попаданий не определена и печатается как nan%
+    @Test
+    void emptyStatisticsHaveNoHitRate() {
+        CacheStats stats = new CacheStats("LRU");
+        stats.hits[CacheStats.INSTRUCTION] = 3;
+        stats.misses[CacheStats.INSTRUCTION] = 1;
+        assertEquals(75.0, stats.hitRate());
+        assertTrue(Double.isNaN(stats.hitRate(CacheStats.DATA)));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CacheStats.printHitRates(new PrintStream(out), stats);
+        assertTrue(out.toString().contains("75.00000%\t75.00000%\tnan%"), out.toString());
+    }
+}
@@ -0,0 +1,79 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+class CachedMemoryTest {
+    // запись попадает в линию, а в память - только при вытеснении грязной линии
+    @Test
+    void writesBackOnEviction() {
+        CacheConfig config = new CacheConfig(18, 1, 1, 16);
+        Memory memory = Memory.allocate(config.addrLen);
+        memory.writeWord(0x104, 5);
+        LruCache cache = new LruCache(memory, config, true);
+        CachedMemory port = new CachedMemory(memory, config, cache::residentLine);
+
+        cache.write(0x100);
+        assertEquals(5, port.readWord(0x104));
+        port.writeWord(0x100, 0x11223344);
+        port.writeHalf(0x10F, (short) 0x5566); // через границу линии: старший байт уходит в память
+        assertEquals(0x11223344, port.readWord(0x100));
+        assertEquals(0, memory.readWord(0x100));
+        assertEquals(0x55, memory.read(0x110));
+
+        cache.access(0x200, CacheStats.DATA);
+        assertTrue(cache.evictedDirty());
+        assertEquals(0x11223344, memory.readWord(0x100));
+        assertEquals(0x66, memory.read(0x10F));
+        assertEquals(1, cache.stats.writeBacks[CacheStats.DATA]);
+    }
+
+    // с кэшем, хранящим данные, программа видит ту же память, что и без него, а после flushCaches
+    // основная память совпадает байт в байт; невыровненные и побайтовые обращения пересекают линии
+    @Test
+    void programSeesSameMemory() {
+        Assembler assembler = new Assembler(Main.registerMap);
+        assembler.parse(Arrays.asList(
+                "    la t0, array",
+                "    li t1, 300",
+                "loop:",
+                "    sw t1, 0(t0)",
+                "    sh t1, 1(t0)",
+                "    sb t1, 514(t0)",
+                "    lw t2, 2(t0)",
+                "    lbu t3, 514(t0)",
+                "    lh t4, 1(t0)",
+                "    add t5, t5, t2",
+                "    add t5, t5, t3",
+                "    add t5, t5, t4",
+                "    addi t0, t0, 3",
+                "    addi t1, t1, -1",
+                "    bnez t1, loop",
+                ".data",
+                "array:",
+                "    .space 1500"));
+        CacheConfig config = new CacheConfig(18, 2, 2, 16);
+        CPU expected = run(assembler, config, null);
+        for (String dataCache : new String[]{"lru", "plru"}) {
+            CPU actual = run(assembler, config, dataCache);
+            assertArrayEquals(expected.registers, actual.registers, dataCache);
+            int[] a = new int[1 << 16];
+            int[] b = new int[1 << 16];
+            expected.memory().readWords(0, a, 0, a.length);
+            actual.memory().readWords(0, b, 0, b.length);
+            assertArrayEquals(a, b, dataCache);
+            assertTrue(actual.cacheStatistics()[dataCache.equals("lru") ? 0 : 1].writeBacks[CacheStats.DATA] > 0);
+        }
+    }
+
+    private static CPU run(Assembler assembler, CacheConfig config, String dataCache) {
+        CPU processor = new CPU(Memory.allocate(config.addrLen), Main.registerMap, config);
+        processor.setDataCache(dataCache);
+        processor.executeProgram(assembler.getCommands(), assembler.textSize());
+        processor.flushCaches();
+        return processor;
+    }
+}
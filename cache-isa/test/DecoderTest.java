@@ -0,0 +1,47 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+class DecoderTest {
+    // sw x5, -4(x2): imm[11:5] = 0x7F, imm[4:0] = 0x1C
+    @Test
+    void storeOffsetIsSignExtended() {
+        long instruction = Decoder.decode(0xFE512E23);
+        assertEquals(Decoder.OP_SW, Decoder.op(instruction));
+        assertEquals(2, Decoder.rs1(instruction));
+        assertEquals(5, Decoder.rs2(instruction));
+        assertEquals(-4, Decoder.imm(instruction));
+    }
+
+    @Test
+    void negativeStoreOffsetWritesBelowBase() {
+        Assembler assembler = new Assembler(Main.registerMap);
+        assembler.parse(Arrays.asList(
+                "    li t1, 0x2000",
+                "    li t0, 77",
+                "    sw t0, -4(t1)",
+                "    sh t0, -6(t1)"));
+        CPU processor = new CPU(Memory.allocate(18), Main.registerMap, CacheConfig.defaults());
+        processor.executeProgram(assembler.getCommands(), assembler.textSize());
+        assertEquals(77, processor.memory().readWord(0x1FFC));
+        assertEquals(77, processor.memory().readHalf(0x1FFA));
+        assertEquals(0, processor.memory().readWord(0x2FFC));
+    }
+
+    // неверный funct3 загрузки, записи и ветвления отдаёт Decoder.funct3, из какого бы поля он ни брался
+    @Test
+    void incorrectFunct3() {
+        long load = Decoder.decode(0x00013303); // funct3 3: ld из RV64
+        assertEquals(Decoder.OP_LOAD_BAD, Decoder.op(load));
+        assertEquals(3, Decoder.funct3(load));
+        long store = Decoder.decode(0x00515023); // funct3 5
+        assertEquals(Decoder.OP_STORE_BAD, Decoder.op(store));
+        assertEquals(5, Decoder.funct3(store));
+        long branch = Decoder.decode(0x00002063); // funct3 2
+        assertEquals(Decoder.OP_BRANCH_BAD, Decoder.op(branch));
+        assertEquals(2, Decoder.funct3(branch));
+        assertEquals(0, Decoder.funct3(Decoder.decode(0xFE512E23)));
+    }
+}
@@ -0,0 +1,54 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class LruCacheTest {
+    @Test
+    void evictsLeastRecentlyUsedLine() {
+        CacheConfig config = new CacheConfig(18, 1, 4, 16);
+        LruCache cache = new LruCache(null, config);
+        for (int line = 0; line < 4; line++) {
+            assertFalse(cache.access(16 * line, CacheStats.DATA));
+        }
+        assertTrue(cache.access(0, CacheStats.DATA));
+        assertFalse(cache.access(16 * 4, CacheStats.DATA)); // вытесняет линию 1
+        assertTrue(cache.contains(0));
+        assertFalse(cache.contains(16));
+        assertTrue(cache.contains(32));
+    }
+
+    // попадания и промахи совпадают с моделью: на набор - LinkedHashSet в порядке последних обращений
+    @Test
+    void matchesReferenceModel() {
+        CacheConfig config = new CacheConfig(18, 4, 4, 16);
+        LruCache cache = new LruCache(null, config);
+        List<LinkedHashSet<Integer>> sets = new ArrayList<>();
+        for (int i = 0; i < config.sets; i++) {
+            sets.add(new LinkedHashSet<>());
+        }
+        Random random = new Random(3);
+        long hits = 0;
+        for (int i = 0; i < 50_000; i++) {
+            int address = 4 * random.nextInt(256);
+            LinkedHashSet<Integer> set = sets.get(config.index(address));
+            int tag = config.tag(address);
+            boolean expected = set.remove(tag);
+            if (!expected && set.size() == config.ways) {
+                set.remove(set.iterator().next());
+            }
+            set.add(tag);
+            boolean hit = i % 3 == 0 ? cache.write(address) : cache.access(address, CacheStats.DATA);
+            assertEquals(expected, hit, "access " + i);
+            hits += hit ? 1 : 0;
+        }
+        assertEquals(hits, cache.stats.hits[CacheStats.DATA]);
+        assertEquals(50_000 - hits, cache.stats.misses[CacheStats.DATA]);
+    }
+}
@@ -0,0 +1,95 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class MemoryTest {
+    @Test
+    void wordsAreLittleEndian() {
+        Memory memory = Memory.allocate(18);
+        memory.writeWord(0x100, 0x12345678);
+        assertEquals(0x78, memory.read(0x100));
+        assertEquals(0x12, memory.read(0x103));
+        assertEquals(0x1234, memory.readHalf(0x102));
+        memory.writeHalf(0x101, (short) 0xBEEF);
+        assertEquals(0x12BEEF78, memory.readWord(0x100));
+    }
+
+    // быстрые пути для слов и блоков слов совпадают с побайтовой моделью: невыровненные адреса,
+    // границы страниц и переход через конец памяти на начало
+    @Test
+    void fastPathsMatchByteModel() {
+        Memory[] memories = {new DenseMemory(1 << 22), new SparseMemory(22), BufferMemory.direct(22)};
+        for (Memory memory : memories) {
+            String name = memory.getClass().getSimpleName();
+            int size = (int) memory.size();
+            byte[] model = new byte[size];
+            Random random = new Random(5);
+            for (int i = 0; i < 20_000; i++) {
+                int address = address(random, size);
+                int value = random.nextInt();
+                switch (random.nextInt(4)) {
+                    case 0:
+                        memory.writeWord(address, value);
+                        put(model, address, value, 4);
+                        break;
+                    case 1:
+                        memory.writeHalf(address, (short) value);
+                        put(model, address, value, 2);
+                        break;
+                    case 2:
+                        memory.write(address, (byte) value);
+                        put(model, address, value, 1);
+                        break;
+                    default:
+                        int[] words = new int[1 + random.nextInt(40)];
+                        for (int j = 0; j < words.length; j++) {
+                            words[j] = random.nextInt();
+                            put(model, address + 4 * j, words[j], 4);
+                        }
+                        memory.writeWords(address, words, 0, words.length);
+                        break;
+                }
+
+                address = address(random, size);
+                assertEquals(get(model, address, 4), memory.readWord(address), name + " " + address);
+                assertEquals((short) get(model, address, 2), memory.readHalf(address), name + " " + address);
+                int[] expected = new int[9];
+                int[] actual = new int[9];
+                for (int j = 1; j < 9; j++) {
+                    expected[j] = get(model, address + 4 * (j - 1), 4);
+                }
+                memory.readWords(address, actual, 1, 8);
+                assertArrayEquals(expected, actual, name + " " + address);
+            }
+        }
+    }
+
+    // адрес около границы страницы, около конца памяти или за ним - он сворачивается по размеру
+    private static int address(Random random, int size) {
+        switch (random.nextInt(3)) {
+            case 0:
+                return random.nextInt(size / Memory.PAGE_SIZE) * Memory.PAGE_SIZE - random.nextInt(8);
+            case 1:
+                return size - random.nextInt(40);
+            default:
+                return random.nextInt();
+        }
+    }
+
+    private static void put(byte[] model, int address, int value, int bytes) {
+        for (int i = 0; i < bytes; i++) {
+            model[(address + i) & (model.length - 1)] = (byte) (value >> (8 * i));
+        }
+    }
+
+    private static int get(byte[] model, int address, int bytes) {
+        int value = 0;
+        for (int i = 0; i < bytes; i++) {
+            value |= (model[(address + i) & (model.length - 1)] & 0xFF) << (8 * i);
+        }
+        return value;
+    }
+}
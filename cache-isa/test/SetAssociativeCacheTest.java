@@ -0,0 +1,111 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class SetAssociativeCacheTest {
+    private static final CacheConfig ONE_SET = new CacheConfig(18, 1, 4, 16);
+
+    // A B C D A E: LRU вытесняет B, FIFO - A, tree-PLRU - C (A в левой половине, в правой D свежее C)
+    @Test
+    void policiesChooseDifferentVictims() {
+        String[] policies = {"lru", "fifo", "tree-plru"};
+        int[] victims = {1, 0, 2};
+        for (int i = 0; i < policies.length; i++) {
+            Cache cache = Cache.create(policies[i], null, ONE_SET);
+            for (int line : new int[]{0, 1, 2, 3, 0}) {
+                cache.access(16 * line, CacheStats.DATA);
+            }
+            assertFalse(cache.access(16 * 4, CacheStats.DATA));
+            assertTrue(cache.evicted());
+            assertEquals(16 * victims[i], cache.evictedAddress(), policies[i]);
+            for (int line = 0; line < 4; line++) {
+                assertEquals(line != victims[i], cache.contains(16 * line), policies[i] + " line " + line);
+            }
+        }
+    }
+
+    // OPT совпадает с наивной моделью Белади и промахивается не чаще любой другой политики
+    @Test
+    void optIsOptimal() {
+        CacheConfig config = new CacheConfig(18, 2, 4, 16);
+        TraceBuffer trace = new TraceBuffer();
+        Random random = new Random(9);
+        int[] lines = new int[5000];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = random.nextInt(10) < 7 ? random.nextInt(10) : random.nextInt(40);
+            trace.record(TraceSink.LOAD, 16 * lines[i]);
+        }
+
+        CacheStats opt = TraceReplay.replay(trace::reader, config, "opt");
+        assertEquals(beladyMisses(lines, config), opt.misses[CacheStats.DATA]);
+        for (String policy : new String[]{"lru", "plru", "tree-plru", "srrip", "brrip", "fifo", "random"}) {
+            CacheStats stats = TraceReplay.replay(trace::reader, config, policy);
+            assertEquals(lines.length, stats.accesses(CacheStats.DATA), policy);
+            assertTrue(opt.misses[CacheStats.DATA] <= stats.misses[CacheStats.DATA], policy);
+        }
+    }
+
+    private static long beladyMisses(int[] lines, CacheConfig config) {
+        List<List<Integer>> sets = new ArrayList<>();
+        for (int i = 0; i < config.sets; i++) {
+            sets.add(new ArrayList<>());
+        }
+        long misses = 0;
+        for (int i = 0; i < lines.length; i++) {
+            List<Integer> set = sets.get(lines[i] % config.sets);
+            if (set.contains(lines[i])) {
+                continue;
+            }
+            misses++;
+            if (set.size() == config.ways) {
+                int victim = 0;
+                int farthest = -1;
+                for (int way = 0; way < set.size(); way++) {
+                    int next = i + 1;
+                    while (next < lines.length && lines[next] != set.get(way)) {
+                        next++;
+                    }
+                    if (next > farthest) {
+                        farthest = next;
+                        victim = way;
+                    }
+                }
+                set.remove(victim);
+            }
+            set.add(lines[i]);
+        }
+        return misses;
+    }
+
+    // SRRIP: короткий проход по новым линиям не вытесняет линии с повторными обращениями, LRU - вытесняет
+    @Test
+    void srripResistsScans() {
+        Cache srrip = Cache.create("srrip", null, ONE_SET);
+        Cache lru = Cache.create("lru", null, ONE_SET);
+        for (Cache cache : new Cache[]{srrip, lru}) {
+            for (int pass = 0; pass < 3; pass++) {
+                cache.access(0, CacheStats.DATA);
+                cache.access(16, CacheStats.DATA);
+            }
+            for (int line = 100; line < 104; line++) {
+                cache.access(16 * line, CacheStats.DATA);
+            }
+        }
+        assertTrue(srrip.contains(0) && srrip.contains(16));
+        assertFalse(lru.contains(0) || lru.contains(16));
+    }
+
+    @Test
+    void rejectsUnknownPolicies() {
+        assertThrows(IllegalArgumentException.class, () -> Cache.create("mru", null, ONE_SET));
+        assertThrows(IllegalArgumentException.class,
+                () -> Cache.create("tree-plru", null, new CacheConfig(18, 1, 3, 16)));
+    }
+}
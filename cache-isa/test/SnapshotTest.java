@@ -0,0 +1,98 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SnapshotTest {
+    @TempDir
+    Path dir;
+
+    private static final List<String> PROGRAM = Arrays.asList(
+            "    li s1, 3",
+            "outer:",
+            "    la t0, array",
+            "    li t1, 200",
+            "inner:",
+            "    lw t2, 0(t0)",
+            "    add t2, t2, t1",
+            "    sw t2, 0(t0)",
+            "    sh t1, 1000(t0)",
+            "    addi t0, t0, 4",
+            "    addi t1, t1, -1",
+            "    bnez t1, inner",
+            "    addi s1, s1, -1",
+            "    bnez s1, outer",
+            ".data",
+            "array:",
+            "    .space 2000");
+
+    private static CPU processor(CacheConfig config, String dataCache) {
+        CPU processor = new CPU(Memory.allocate(config.addrLen), Main.registerMap, config);
+        processor.setDataCache(dataCache);
+        return processor;
+    }
+
+    private static CPU load(CacheConfig config, String dataCache) {
+        Assembler assembler = new Assembler(Main.registerMap);
+        assembler.parse(PROGRAM);
+        CPU processor = processor(config, dataCache);
+        processor.loadProgram(assembler.getCommands(), assembler.textSize());
+        return processor;
+    }
+
+    // прогрев, снимок, восстановление в новый процессор и продолжение дают то же, что непрерывный прогон:
+    // регистры, память и статистику кэшей после прогрева, в том числе с кэшем, хранящим данные
+    @Test
+    void restoredRunMatchesUninterrupted() throws IOException {
+        CacheConfig config = new CacheConfig(18, 4, 2, 32);
+        for (String dataCache : new String[]{null, "lru", "plru"}) {
+            String snapshot = dir.resolve("snapshot-" + dataCache).toString();
+            CPU original = load(config, dataCache);
+            original.run(1500);
+            original.resetStatistics();
+            Snapshot.save(snapshot, original);
+            original.runToEnd();
+            original.flushCaches();
+
+            CPU restored = processor(config, dataCache);
+            restored.memory().writeWord(0x30000, -1); // страницы вне снимка должны обнулиться
+            Snapshot.restore(snapshot, restored);
+            restored.runToEnd();
+            restored.flushCaches();
+
+            assertEquals(original.executed, restored.executed, dataCache);
+            assertArrayEquals(original.registers, restored.registers, dataCache);
+            assertEquals(0, restored.memory().readWord(0x30000), dataCache);
+            int[] expected = new int[1 << 16];
+            int[] actual = new int[1 << 16];
+            original.memory().readWords(0, expected, 0, expected.length);
+            restored.memory().readWords(0, actual, 0, actual.length);
+            assertArrayEquals(expected, actual, dataCache);
+            for (int i = 0; i < 2; i++) {
+                CacheStats a = original.cacheStatistics()[i];
+                CacheStats b = restored.cacheStatistics()[i];
+                assertArrayEquals(a.hits, b.hits, dataCache);
+                assertArrayEquals(a.misses, b.misses, dataCache);
+                assertArrayEquals(a.writeBacks, b.writeBacks, dataCache);
+            }
+        }
+    }
+
+    @Test
+    void rejectsOtherGeometry() throws IOException {
+        String snapshot = dir.resolve("snapshot").toString();
+        CPU original = load(CacheConfig.defaults(), null);
+        original.run(100);
+        Snapshot.save(snapshot, original);
+
+        assertThrows(IOException.class, () -> Snapshot.restore(snapshot, processor(new CacheConfig(18, 4, 4, 64), null)));
+        assertThrows(IOException.class, () -> Snapshot.restore(snapshot, processor(CacheConfig.defaults(), "lru")));
+    }
+}
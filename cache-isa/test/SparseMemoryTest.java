@@ -0,0 +1,49 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class SparseMemoryTest {
+    // 4 ГиБ адресов, но страницы выделяются только при записи; чтение не выделяет ничего
+    @Test
+    void allocatesPagesOnWrite() {
+        SparseMemory memory = new SparseMemory(32);
+        assertEquals(1L << 32, memory.size());
+        assertEquals(0, memory.readWord(0x80001234));
+        assertEquals(0, memory.read(0xFFFFFFFF));
+        assertEquals(0, memory.pages());
+
+        memory.writeWord(0xFFFFF000, 0xCAFEBABE);
+        memory.writeWord(0xFFFFF004, 7);
+        assertEquals(1, memory.pages());
+        assertEquals(0xCAFEBABE, memory.readWord(0xFFFFF000));
+
+        // слово на границе страниц и слово через конец адресного пространства
+        memory.writeWord(0x7FFFFFFE, 0x11223344);
+        memory.writeWord(0xFFFFFFFE, 0x55667788);
+        assertEquals(4, memory.pages());
+        assertEquals(0x11223344, memory.readWord(0x7FFFFFFE));
+        assertEquals(0x55667788, memory.readWord(0xFFFFFFFE));
+        assertEquals(0x5566, memory.readHalf(0));
+
+        assertTrue(memory.isAllocated(0xFFFFF000 >>> Memory.PAGE_BITS));
+        assertFalse(memory.isAllocated(0x12345));
+    }
+
+    // при меньшем адресном пространстве адреса сворачиваются так же, как у DenseMemory
+    @Test
+    void wrapsAddressesBySize() {
+        SparseMemory memory = new SparseMemory(24);
+        memory.writeWord(0x01000010, 42);
+        assertEquals(42, memory.readWord(0x10));
+        assertEquals(42, memory.readWord(0xFF000010));
+        assertEquals(1, memory.pages());
+    }
+
+    @Test
+    void rejectsTooSmallAddressSpace() {
+        assertThrows(IllegalArgumentException.class, () -> new SparseMemory(Memory.PAGE_BITS));
+    }
+}
@@ -0,0 +1,60 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class SweepTest {
+    private static final List<String> PROGRAM = Arrays.asList(
+            "    li t1, 64",
+            "    la t0, array",
+            "loop:",
+            "    lw t2, 0(t0)",
+            "    sw t2, 256(t0)",
+            "    addi t0, t0, 8",
+            "    addi t1, t1, -1",
+            "    bnez t1, loop",
+            ".data",
+            "array:",
+            "    .space 1024");
+
+    // параллельный перебор геометрий даёт ту же статистику, что и отдельные прогоны,
+    // в порядке конфигураций и политик из запроса
+    @Test
+    void matchesSeparateRuns() throws InterruptedException {
+        Assembler assembler = new Assembler(Main.registerMap);
+        assembler.parse(PROGRAM);
+        List<CacheConfig> configs = Arrays.asList(
+                new CacheConfig(18, 1, 2, 16),
+                new CacheConfig(18, 4, 2, 32),
+                new CacheConfig(18, 8, 4, 64));
+        String[] policies = {"plru", "fifo", "lru"};
+        List<Sweep.Result> results = Sweep.run(assembler.getCommands(), assembler.textSize(), configs, policies,
+                3, false, 0, 0, false);
+
+        assertEquals(configs.size() * policies.length, results.size());
+        for (int i = 0; i < configs.size(); i++) {
+            CacheConfig config = configs.get(i);
+            CPU processor = new CPU(Memory.allocate(config.addrLen), Main.registerMap, config);
+            TraceBuffer trace = new TraceBuffer();
+            processor.setTrace(trace);
+            processor.executeProgram(assembler.getCommands(), assembler.textSize());
+            CacheStats[] expected = {
+                    processor.cacheStatistics()[1],
+                    TraceReplay.replay(trace::reader, config, "fifo"),
+                    processor.cacheStatistics()[0],
+            };
+            for (int j = 0; j < policies.length; j++) {
+                Sweep.Result result = results.get(i * policies.length + j);
+                String where = config + " " + policies[j];
+                assertEquals(config, result.config, where);
+                assertEquals(policies[j], result.stats.name.toLowerCase(), where);
+                assertArrayEquals(expected[j].hits, result.stats.hits, where);
+                assertArrayEquals(expected[j].misses, result.stats.misses, where);
+                assertArrayEquals(expected[j].evictions, result.stats.evictions, where);
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class TraceBufferTest {
+    // дельты любого знака и размера, в том числе через переполнение int
+    @Test
+    void readsBackWhatWasRecorded() {
+        Random random = new Random(2);
+        int[] kinds = new int[10_000];
+        int[] addresses = new int[kinds.length];
+        TraceBuffer trace = new TraceBuffer();
+        for (int i = 0; i < kinds.length; i++) {
+            kinds[i] = random.nextInt(3);
+            addresses[i] = i % 7 == 0 ? random.nextInt() : 0x10000 + 4 * i;
+            trace.record(kinds[i], addresses[i]);
+        }
+        assertEquals(kinds.length, trace.events());
+
+        for (int pass = 0; pass < 2; pass++) {
+            TraceReader reader = trace.reader();
+            for (int i = 0; i < kinds.length; i++) {
+                assertTrue(reader.next());
+                assertEquals(kinds[i], reader.kind, "event " + i);
+                assertEquals(addresses[i], reader.address, "event " + i);
+            }
+            assertFalse(reader.next());
+        }
+    }
+
+    @Test
+    void rejectsTraceAboveLimit() {
+        TraceBuffer trace = new TraceBuffer(64);
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> {
+            for (int i = 0; i < 100; i++) {
+                trace.record(TraceSink.LOAD, 1 << 30 ^ (i << 20));
+            }
+        });
+        assertTrue(e.getMessage().contains("--replay"), e.getMessage());
+    }
+
+    // процессор пишет в трассу каждую выборку команды и каждое обращение к данным, в порядке исполнения
+    @Test
+    void processorRecordsEveryAccess() {
+        Assembler assembler = new Assembler(Main.registerMap);
+        assembler.parse(Arrays.asList(
+                "    addi t0, zero, 256",
+                "    lw t1, 8(t0)",
+                "    sw t1, -4(t0)",
+                "    addi t2, zero, 1"));
+        int[][] expected = {
+                {TraceSink.FETCH, CPU.TEXT_START},
+                {TraceSink.FETCH, CPU.TEXT_START + 4},
+                {TraceSink.LOAD, 264},
+                {TraceSink.FETCH, CPU.TEXT_START + 8},
+                {TraceSink.STORE, 252},
+                {TraceSink.FETCH, CPU.TEXT_START + 12},
+        };
+        for (boolean threaded : new boolean[]{false, true}) {
+            CPU processor = new CPU(Memory.allocate(18), Main.registerMap, CacheConfig.defaults());
+            TraceBuffer trace = new TraceBuffer();
+            processor.setTrace(trace);
+            processor.setThreaded(threaded);
+            processor.executeProgram(assembler.getCommands(), assembler.textSize());
+
+            assertEquals(expected.length, trace.events());
+            TraceReader reader = trace.reader();
+            for (int[] event : expected) {
+                assertTrue(reader.next());
+                assertEquals(event[0], reader.kind);
+                assertEquals(event[1], reader.address);
+            }
+        }
+    }
+}
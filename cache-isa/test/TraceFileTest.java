@@ -0,0 +1,63 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TraceFileTest {
+    @TempDir
+    Path dir;
+
+    // больше буфера записи: файл собирается из нескольких сбросов и читается так же, как TraceBuffer
+    @Test
+    void readsBackWhatWasWritten() throws IOException {
+        String name = dir.resolve("trace.bin").toString();
+        Random random = new Random(4);
+        TraceBuffer expected = new TraceBuffer();
+        try (TraceFile.Writer writer = new TraceFile.Writer(name)) {
+            for (int i = 0; i < 400_000; i++) {
+                int kind = random.nextInt(3);
+                int address = random.nextInt();
+                writer.record(kind, address);
+                expected.record(kind, address);
+            }
+        }
+
+        try (TraceFile trace = TraceFile.open(name)) {
+            assertEquals(expected.events(), trace.events());
+            TraceReader actual = trace.reader();
+            TraceReader reader = expected.reader();
+            for (long i = 0; reader.next(); i++) {
+                assertTrue(actual.next(), "event " + i);
+                assertEquals(reader.kind, actual.kind, "event " + i);
+                assertEquals(reader.address, actual.address, "event " + i);
+            }
+            assertFalse(actual.next());
+        }
+    }
+
+    @Test
+    void rejectsForeignAndTruncatedFiles() throws IOException {
+        Path foreign = dir.resolve("foreign.bin");
+        Files.write(foreign, new byte[64]);
+        assertThrows(IOException.class, () -> TraceFile.open(foreign.toString()));
+
+        Path trace = dir.resolve("trace.bin");
+        try (TraceFile.Writer writer = new TraceFile.Writer(trace.toString())) {
+            for (int i = 0; i < 100; i++) {
+                writer.record(TraceSink.FETCH, CPU.TEXT_START + 4 * i);
+            }
+        }
+        byte[] bytes = Files.readAllBytes(trace);
+        Files.write(trace, Arrays.copyOf(bytes, bytes.length - 1));
+        assertThrows(IOException.class, () -> TraceFile.open(trace.toString()));
+    }
+}
@@ -0,0 +1,71 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class TraceReplayTest {
+    // 3000 разных линий - таблица последних обращений несколько раз растёт посреди трассы
+    @Test
+    void nextUsesMatchesNaiveMap() {
+        CacheConfig config = new CacheConfig(24, 4, 2, 16);
+        TraceBuffer trace = new TraceBuffer();
+        Random random = new Random(1);
+        int events = 20_000;
+        for (int i = 0; i < events; i++) {
+            trace.record(TraceSink.LOAD, 16 * random.nextInt(3000) + random.nextInt(16));
+        }
+
+        int[] expected = new int[events];
+        Map<Integer, Integer> last = new HashMap<>();
+        TraceReader reader = trace.reader();
+        for (int i = 0; reader.next(); i++) {
+            Integer previous = last.put(reader.address / 16, i);
+            if (previous != null) {
+                expected[previous] = i;
+            }
+            expected[i] = SetAssociativeCache.NEVER;
+        }
+
+        int[] next = TraceReplay.nextUses(trace.reader(), config);
+        for (int i = 0; i < events; i++) {
+            assertEquals(expected[i], next[i], "event " + i);
+        }
+    }
+
+    // прогон записанной трассы через LRU и pLRU даёт ту же статистику, что и кэши CPU во время исполнения
+    @Test
+    void replayMatchesExecution() {
+        CacheConfig config = new CacheConfig(18, 2, 2, 16);
+        Assembler assembler = new Assembler(Main.registerMap);
+        assembler.parse(Arrays.asList(
+                "    li t1, 50",
+                "    la t0, array",
+                "loop:",
+                "    lw t2, 0(t0)",
+                "    addi t2, t2, 1",
+                "    sw t2, 64(t0)",
+                "    addi t0, t0, 4",
+                "    addi t1, t1, -1",
+                "    bnez t1, loop",
+                ".data",
+                "array:",
+                "    .space 512"));
+        CPU processor = new CPU(Memory.allocate(config.addrLen), Main.registerMap, config);
+        TraceBuffer trace = new TraceBuffer();
+        processor.setTrace(trace);
+        processor.executeProgram(assembler.getCommands(), assembler.textSize());
+
+        String[] policies = {"lru", "plru"};
+        for (int i = 0; i < policies.length; i++) {
+            CacheStats expected = processor.cacheStatistics()[i];
+            CacheStats actual = TraceReplay.replay(trace::reader, config, policies[i]);
+            assertArrayEquals(expected.hits, actual.hits, policies[i]);
+            assertArrayEquals(expected.misses, actual.misses, policies[i]);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class WorkloadGeneratorTest {
+    // каждое ядро с параметрами по умолчанию ассемблируется и доходит до конца
+    @Test
+    void kernelsAssembleAndFinish() {
+        for (String kernel : new String[]{"sweep", "chase", "list", "memcpy", "matmul"}) {
+            WorkloadGenerator generator = new WorkloadGenerator();
+            generator.size = 1024;
+            generator.passes = 2;
+            generator.n = 4;
+            List<String> program = generator.generate(kernel);
+            Assembler assembler = new Assembler(Main.registerMap);
+            assembler.parse(program);
+            CPU processor = new CPU(Memory.allocate(18), Main.registerMap, CacheConfig.defaults());
+            processor.setLimits(10_000_000, 0, false);
+            assertEquals(CPU.STOP_FINISHED, processor.executeProgram(assembler.getCommands(), assembler.textSize()),
+                    kernel);
+        }
+    }
+
+    // параметры, с которыми программа не ассемблировалась бы, отвергает сам генератор
+    @Test
+    void rejectsParametersAssemblerCannotTake() {
+        WorkloadGenerator chase = new WorkloadGenerator();
+        chase.size = 1 << 20;
+        chase.stride = 4;
+        chase.passes = 1 << 20;
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> chase.generate("chase"));
+        assertTrue(e.getMessage().contains("--passes"), e.getMessage());
+
+        WorkloadGenerator sweep = new WorkloadGenerator();
+        sweep.size = 16 << 20;
+        e = assertThrows(IllegalArgumentException.class, () -> sweep.generate("sweep"));
+        assertTrue(e.getMessage().contains("la"), e.getMessage());
+    }
+}